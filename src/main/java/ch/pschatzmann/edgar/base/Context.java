@@ -1,9 +1,11 @@
 package ch.pschatzmann.edgar.base;
 
 import java.io.Serializable;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -21,7 +23,9 @@ import ch.pschatzmann.edgar.base.Fact.Type;
 import ch.pschatzmann.edgar.utils.Utils;
 
 /**
- * Context for the calculation of the date and segment attribute
+ * Context for the calculation of the date and segment attribute. All values
+ * are determined in one pass over the context node when the context is
+ * created. Use XBRL.getContextByID() to get the shared instance of a filing.
  * 
  * @author pschatzmann
  *
@@ -32,8 +36,14 @@ public class Context implements Serializable, Comparable<Context> {
 	private XBRL xbrl;
 	private String id;
 	private Fact contextFact = null;
-	private DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-	private List<Segment> segments = null;
+	private String date = "";
+	private String dateDescription = "";
+	private LocalDate startDate;
+	private LocalDate endDate;
+	private LocalDate instant;
+	private int months = 0;
+	private String identifier = "";
+	private List<Segment> segments = new ArrayList();
 	private String segmentDescription = null;
 	private String dimensionDescription = null;
 
@@ -42,9 +52,84 @@ public class Context implements Serializable, Comparable<Context> {
 		this.id = id;
 		if (xbrl != null && id != null) {
 			contextFact = xbrl.getIndex().find1(this.id, Arrays.asList(Type.context), EMPTY);
+			if (isValid()) {
+				setup();
+			}
 		}
 	}
-	
+
+	/**
+	 * Determines all values of the context from the child nodes
+	 */
+	protected void setup() {
+		List<Fact> periods = new ArrayList();
+		String start = null;
+		String end = null;
+		List<Fact> facts = new ArrayList();
+		collect(contextFact, facts);
+		for (Fact f : facts) {
+			Type type = f.getType();
+			if (type == Type.startDate || type == Type.endDate || type == Type.instant) {
+				String value = f.getAttribute(type.name());
+				periods.add(f);
+				if (type == Type.startDate) {
+					start = start == null ? value : start;
+					startDate = startDate == null ? toLocalDate(value) : startDate;
+				} else {
+					date = value;
+					if (type == Type.endDate) {
+						end = value;
+						endDate = toLocalDate(value);
+					} else {
+						instant = toLocalDate(value);
+					}
+				}
+			} else if (type == Type.identifier) {
+				identifier = f.getAttribute(Attribute.identifier);
+			} else if (type == Type.explicitMember) {
+				segments.add(toSegment(f));
+			}
+		}
+		dateDescription = periods.stream().map(f -> String.valueOf(f.getAttribute(f.getType().name())))
+				.collect(Collectors.joining(" to "));
+		if (start != null && end != null) {
+			try {
+				months = (int) Math.round(ChronoUnit.DAYS.between(parse(start), parse(end)) / 30.0);
+			} catch (Exception ex) {
+				LOG.error(ex, ex);
+			}
+		}
+	}
+
+	private void collect(Fact fact, List<Fact> result) {
+		result.add(fact);
+		for (Fact child : fact.getChildren()) {
+			collect(child, result);
+		}
+	}
+
+	private Segment toSegment(Fact f) {
+		String value = f.getAttribute(Attribute.explicitMember);
+		String id = Utils.lastPath(value);
+		String description = xbrl.getLabelAPI().getLabel(Utils.lastPath(id)).getLabel();
+		String dimensionID = Utils.lastPath(f.getAttribute(Attribute.dimension));
+		String dimensionDescription = xbrl.getLabelAPI().getLabel(dimensionID).getLabel();
+		return new Segment(id, description, dimensionID, dimensionDescription);
+	}
+
+	private static LocalDate toLocalDate(String value) {
+		try {
+			return parse(value);
+		} catch (Exception ex) {
+			return null;
+		}
+	}
+
+	private static LocalDate parse(String value) {
+		String str = value.trim();
+		// we ignore the time information
+		return LocalDate.parse(str.length() > 10 ? str.substring(0, 10) : str);
+	}
 
 	public boolean isValid() {
 		return contextFact !=null && !contextFact.getAttributes().isEmpty();
@@ -54,13 +139,38 @@ public class Context implements Serializable, Comparable<Context> {
 		return this.id == null ? "" : this.id;
 	}
 
+	/**
+	 * Returns the end date or instant as string
+	 * 
+	 * @return
+	 */
 	public String getDate() {
-		List<Fact> list = contextFact.getFacts(Arrays.asList(Type.endDate, Type.instant), true, 0, Integer.MAX_VALUE);
-		String result = "";
-		for (Fact f : list) {
-			result = f.getAttribute(f.getType().name());
-		}
-		return result;
+		return date;
+	}
+
+	/**
+	 * Start date of the period. Null for instants
+	 * 
+	 * @return
+	 */
+	@JsonIgnore
+	public LocalDate getStartDate() {
+		return startDate;
+	}
+
+	/**
+	 * End date of the period. Null for instants
+	 * 
+	 * @return
+	 */
+	@JsonIgnore
+	public LocalDate getEndDate() {
+		return endDate;
+	}
+
+	@JsonIgnore
+	public LocalDate getInstant() {
+		return instant;
 	}
 
 	/**
@@ -69,19 +179,7 @@ public class Context implements Serializable, Comparable<Context> {
 	 * @return
 	 */
 	public Integer getMonths()  {
-		long result = 0;
-		try {
-			List<Fact> listEnd = contextFact.getFacts(Arrays.asList(Type.endDate), true, 0, Integer.MAX_VALUE);
-			List<Fact> listStart = contextFact.getFacts(Arrays.asList(Type.startDate), true, 0, Integer.MAX_VALUE);
-			if (!listEnd.isEmpty() && !listStart.isEmpty() ) {
-				Date start = getDate(listStart,0);
-				Date end = getDate(listEnd, listEnd.size()-1);
-			    result = getMonths(start, end);
-			}
-		} catch(Exception ex) {
-			LOG.error(ex,ex);
-		}
-		return (int) result;
+		return months;
 	}
 
 	public long getMonths(Date start, Date end) {
@@ -91,15 +189,13 @@ public class Context implements Serializable, Comparable<Context> {
 		result = Math.round(days / 30.0);
 		return result;
 	}
-	
-	private Date getDate(List<Fact> list, int pos) throws ParseException {
-		Fact f = list.get(pos);
-		String timeStr = f.getAttribute(f.getType().name());
-		return getDate(timeStr);
-	}
 
 	public Date getDate(String timeStr) throws ParseException {
-		return dateFormat.parse(timeStr);
+		try {
+			return Date.from(parse(timeStr).atStartOfDay(ZoneId.systemDefault()).toInstant());
+		} catch (DateTimeParseException ex) {
+			throw new ParseException(ex.getMessage(), ex.getErrorIndex());
+		}
 	}
 
 	@JsonIgnore
@@ -116,7 +212,7 @@ public class Context implements Serializable, Comparable<Context> {
 					end.add(Calendar.DATE, 1);
 					list = contextFact.getFacts(Arrays.asList(Type.startDate), true, 0, Integer.MAX_VALUE);
 					for (Fact f1 : list) {
-						start.setTime(dateFormat.parse((f1.getAttribute(f1.getType().name()))));
+						start.setTime(getDate(f1.getAttribute(f1.getType().name())));
 					}
 					int diffYear = end.get(Calendar.YEAR) - start.get(Calendar.YEAR);
 					result = diffYear * 12 + end.get(Calendar.MONTH) - start.get(Calendar.MONTH);
@@ -135,47 +231,19 @@ public class Context implements Serializable, Comparable<Context> {
 	 * @return
 	 */
 	public String getDateDescription() {
-		StringBuffer sb = new StringBuffer();
-		try {
-			List<Fact> list = contextFact.getFacts(Arrays.asList(Type.startDate, Type.endDate, Type.instant), true, 0,
-					Integer.MAX_VALUE);
-			for (Fact f : list) {
-				if (sb.length() > 0) {
-					sb.append(" to ");
-				}
-				sb.append(f.getAttribute(f.getType().name()));
-			}
-		} catch(Exception ex) {
-			LOG.error(ex,ex);
-		}
-		return sb.toString();
+		return dateDescription;
 	}
 
 	public boolean isWithSegments() {
-		return this.getSegments().iterator().hasNext();
+		return !this.getSegments().isEmpty();
 	}
 
 	public List<Segment> getSegments() {
-		if (segments == null) {
-			segments = new ArrayList();
-			for (Fact f : contextFact.getFacts(Arrays.asList(Type.explicitMember), true, 0, Integer.MAX_VALUE)) {
-				String value = f.getAttribute(Attribute.explicitMember);
-				String id = Utils.lastPath(value);
-				String description = xbrl.getLabelAPI().getLabel(Utils.lastPath(id)).getLabel();
-				String dimensionID = Utils.lastPath(f.getAttribute(Attribute.dimension));
-				String dimensionDescription = xbrl.getLabelAPI().getLabel(dimensionID).getLabel();
-				segments.add(new Segment(id, description, dimensionID, dimensionDescription));
-			}
-		}
 		return segments;
 	}
 
 	public String getCompanyIdentifier() {
-		String result = "";
-		for (Fact f : contextFact.getFacts(Arrays.asList(Type.identifier), true, 0, Integer.MAX_VALUE)) {
-			result = f.getAttribute(Attribute.identifier);
-		}
-		return result;
+		return identifier;
 	}
 
 	@Override
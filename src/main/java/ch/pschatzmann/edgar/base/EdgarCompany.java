@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -385,14 +386,77 @@ public class EdgarCompany implements ICompany, Serializable, Comparable<EdgarCom
 	 */
 	
 	public XBRL getXBRL(String regex) {
+		return getXBRL(regex, null);
+	}
+
+	/**
+	 * Loads the selected values of all filings for a company to one combined
+	 * XBRL
+	 * 
+	 * @param regex
+	 * @param filter
+	 *            selection of values which is applied by the parser
+	 * @return
+	 */
+	public XBRL getXBRL(String regex, FactFilter filter) {
+		return getXBRL(regex, filter, new XBRL());
+	}
+
+	/**
+	 * Loads the selected values of all filings for a company to one combined
+	 * XBRL. The filings are parsed in parallel.
+	 * 
+	 * @param regex
+	 * @param filter
+	 *            selection of values which is applied by the parser
+	 * @param parallelism
+	 *            number of filings which are parsed in parallel
+	 * @return
+	 */
+	public XBRL getXBRL(String regex, FactFilter filter, int parallelism) {
 		XBRL xbrl = new XBRL();
+		xbrl.setFilingParallelism(parallelism);
+		return getXBRL(regex, filter, xbrl);
+	}
+
+	protected XBRL getXBRL(String regex, FactFilter filter, XBRL xbrl) {
 		xbrl.setConvertHtmlToText(true);
-		EdgarFileService.getFilings(this.getFolderName()).stream()
+		xbrl.setLazyLinkbases(true);
+		// with a filter we only need the values
+		xbrl.setSkipHtml(filter != null);
+		xbrl.setFactFilter(filter);
+		// snapshots are only used w/o filter
+		xbrl.setSnapshots(true);
+		xbrl.load(EdgarFileService.getFilings(this.getFolderName()).stream()
 			.filter(filing -> filing.matches(regex))
-			.forEach(filing -> xbrl.tryLoad(EdgarFileService.getFile(filing),null));
+			.map(filing -> EdgarFileService.getFile(filing))
+			.collect(Collectors.toList()));
 		return xbrl;
 	}
 
+	/**
+	 * Streams the numeric values of all filings which match the regex. The
+	 * filings are parsed one by one with the streaming parser, so that the
+	 * memory usage does not depend on the size of the filings.
+	 * 
+	 * @param regex
+	 * @param consumer
+	 * @return number of records
+	 */
+	public long streamValues(String regex, Consumer<FactRecord> consumer) {
+		long result = 0;
+		for (String filing : EdgarFileService.getFilings(this.getFolderName())) {
+			if (filing.matches(regex)) {
+				try {
+					result += new XBRL().stream(EdgarFileService.getFile(filing), consumer);
+				} catch (Exception ex) {
+					LOG.error("Could not load " + filing + ": " + ex);
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Access to extended table functionality with calculations 
 	 * @return
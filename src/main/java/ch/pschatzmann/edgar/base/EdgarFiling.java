@@ -2,6 +2,7 @@ package ch.pschatzmann.edgar.base;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
@@ -23,7 +24,7 @@ import ch.pschatzmann.edgar.service.EdgarFileService;
  * @author pschatzmann
  *
  */
-public class EdgarFiling {
+public class EdgarFiling implements Serializable {
 	private String fileName;
 	private String form;
 	private XBRL xbrl;
@@ -65,7 +66,8 @@ public class EdgarFiling {
 	public static XBRL getXBRL(Collection<EdgarFiling> filings) {
 		XBRL xbrl = new XBRL();
 		xbrl.setConvertHtmlToText(true);
-		filings.forEach(f -> xbrl.tryLoad(f.getFile(),null));
+		xbrl.setSnapshots(true);
+		xbrl.load(filings.stream().map(f -> f.getFile()).collect(Collectors.toList()));
 		return xbrl;
 	}
 
@@ -81,6 +83,7 @@ public class EdgarFiling {
 		if (xbrl==null) {
 			xbrl = new XBRL();
 			xbrl.setConvertHtmlToText(true);
+			xbrl.setSnapshots(true);
 			xbrl.load(EdgarFileService.getFile(fileName));
 		}
 		return xbrl;
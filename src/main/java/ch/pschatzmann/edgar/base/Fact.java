@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,6 +14,7 @@ import org.apache.log4j.Logger;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import ch.pschatzmann.edgar.utils.StringPool;
 import ch.pschatzmann.edgar.utils.Utils;
 
 /**
@@ -55,6 +57,10 @@ public class Fact implements Serializable, Comparable<Fact> {
 	private long line = 0;
     @JsonIgnore
 	private EdgarFiling filingInfo;
+    @JsonIgnore
+	private int id = -1;
+    @JsonIgnore
+	private FactStore columns;
 
 	/**
 	 * Default Constructor
@@ -65,12 +71,40 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 * @param line
 	 */
 	public Fact(XBRL xbrl, Type type, int level, long line) {
+		this(xbrl, type, level, line, true);
+	}
+
+	/**
+	 * Constructor for facts which are not registered in the FactStore of the
+	 * document (e.g. calculated values which are not part of the document): they
+	 * are released as soon as they are not used any more.
+	 * 
+	 * @param xbrl
+	 * @param type
+	 * @param level
+	 * @param line
+	 * @param register
+	 */
+	protected Fact(XBRL xbrl, Type type, int level, long line, boolean register) {
 		this.xbrl = xbrl;
+		if (xbrl!=null) {
+			this.filingInfo = xbrl.getFilingInfo();
+		}
+		if (xbrl!=null && register) {
+			FactStore store = xbrl.getFactStore();
+			this.id = store.add(this, type, level, line);
+			if (store.isColumnar()) {
+				// the data is kept in the columns of the store
+				this.columns = store;
+				this.attributes = null;
+				this.children = null;
+				this.parents = null;
+				return;
+			}
+		}
 		this.type = type;
 		this.line = line;
 		this.level = level;
-		if (xbrl!=null)
-			this.filingInfo = xbrl.getFilingInfo();
 	}
 	
 	/**
@@ -86,6 +120,8 @@ public class Fact implements Serializable, Comparable<Fact> {
 		this.parents = source.parents;		
 		this.line = source.line;
 		this.level = source.level;	
+		this.id = source.id;
+		this.columns = source.columns;
 		if (xbrl!=null)
 			this.filingInfo = xbrl.getFilingInfo();
 	}
@@ -95,13 +131,38 @@ public class Fact implements Serializable, Comparable<Fact> {
 		return this.xbrl;
 	}
 
+	/**
+	 * Moves the fact to another XBRL document (used when merging parsed
+	 * documents)
+	 * 
+	 * @param xbrl
+	 * @param id
+	 * @param columns
+	 */
+	protected void rebind(XBRL xbrl, int id, FactStore columns) {
+		this.xbrl = xbrl;
+		this.id = id;
+		this.columns = columns;
+		this.explodedFacts = null;
+	}
+
+	/**
+	 * Returns the row id of the fact in the FactStore of the XBRL document
+	 * 
+	 * @return
+	 */
+    @JsonIgnore
+	public int getId() {
+		return this.id;
+	}
+
 	/**
 	 * type of the fact (usaully the xml tag name)
 	 * 
 	 * @return
 	 */
 	public Type getType() {
-		return type;
+		return columns != null ? columns.getType(id) : type;
 	}
 
 	/**
@@ -132,8 +193,40 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 * @param value
 	 */
 	public void put(String key, String value) {
-		this.attributes.put(key, value);
-		xbrl.getIndex().add(value, this);
+		if (xbrl != null && xbrl.isFrozen()) {
+			throw new IllegalStateException("The XBRL is frozen and can not be changed");
+		}
+		// the columns are dictionary encoded anyway
+		if (columns == null && xbrl != null) {
+			StringPool pool = xbrl.getStringPool();
+			key = pool.intern(key);
+			value = pool.intern(value);
+		}
+		if (columns != null) {
+			columns.putAttribute(id, key, value);
+		} else {
+			this.attributes.put(key, value);
+		}
+		// facts w/o xbrl or w/o row id are not registered (e.g. discarded nodes in
+		// streaming mode or the combined text values)
+		if (isRegistered()) {
+			xbrl.getIndex().add(value, this);
+		}
+	}
+
+	/**
+	 * Adds attribute information w/o updating the index (used when the facts
+	 * and the index are restored from a snapshot)
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	protected void restoreAttribute(String key, String value) {
+		if (columns != null) {
+			columns.putAttribute(id, key, value);
+		} else {
+			this.attributes.put(key, value);
+		}
 	}
 
 	/**
@@ -154,7 +247,7 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 */
     @JsonIgnore
 	public Map<String, String> getAttributes() {
-		return this.attributes;
+		return columns != null ? columns.getAttributes(id) : this.attributes;
 	}
 
 	/**
@@ -163,7 +256,7 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 * @return
 	 */
 	public List<Fact> getChildren() {
-		return children;
+		return columns != null ? columns.getChildren(id) : children;
 	}
 	
 	/**
@@ -189,7 +282,7 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 */
     @JsonIgnore
 	public List<Fact> getParents() {
-		return parents;
+		return columns != null ? columns.getParents(id) : parents;
 	}
 
 	/**
@@ -198,7 +291,28 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 * @param fact
 	 */
 	public void addChild(Fact fact) {
-		children.add(fact);
+		if (columns != null) {
+			columns.addChild(id, fact.getId());
+		} else {
+			children.add(fact);
+		}
+		if (xbrl != null) {
+			xbrl.getFactStore().attach(id, fact.getId());
+		}
+	}
+
+	/**
+	 * Adds a child node w/o updating the reachable facts of the FactStore (used
+	 * when the facts are restored from a snapshot)
+	 * 
+	 * @param fact
+	 */
+	protected void restoreChild(Fact fact) {
+		if (columns != null) {
+			columns.addChild(id, fact.getId());
+		} else {
+			children.add(fact);
+		}
 	}
 
 	/**
@@ -207,7 +321,12 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 * @param fact
 	 */
 	public void addParent(Fact fact) {
-		parents.add(fact);
+		if (columns != null) {
+			// in the columnar storage a fact has only one parent
+			columns.setParent(id, fact.getId());
+		} else {
+			parents.add(fact);
+		}
 	}
 
 	/**
@@ -217,7 +336,7 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 */
 	@JsonIgnore
 	public int getLevel() {
-		return level;
+		return columns != null ? columns.getLevel(id) : level;
 	}
 
 	/**
@@ -226,16 +345,24 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 * @param level
 	 */
 	public void setLevel(int level) {
-		this.level = level;
+		if (columns != null) {
+			columns.setLevel(id, level);
+		} else {
+			this.level = level;
+		}
 	}
 
 	/**
 	 * Clears the attributes and children
 	 */
 	public void clear() {
-		attributes.clear();
-		children.clear();
-		parents.clear();
+		if (columns != null) {
+			columns.clear(id);
+		} else {
+			attributes.clear();
+			children.clear();
+			parents.clear();
+		}
 		explodedFacts = null;
 	}
 
@@ -248,11 +375,27 @@ public class Fact implements Serializable, Comparable<Fact> {
     @JsonIgnore
 	public List<Fact> getFacts() {
 		if (explodedFacts==null) {
-			explodedFacts = new ArrayList();
-			explodeList(this, explodedFacts);
+			List<Fact> result = new ArrayList();
+			explodeList(this, result);
+			if (xbrl != null && xbrl.isFrozen()) {
+				// facts of a frozen document are shared by multiple threads: only
+				// the lists which were determined by freezeFacts() are kept
+				return result;
+			}
+			explodedFacts = result;
 		}
 		return explodedFacts;
 	}
+
+	/**
+	 * Determines the exploded list of facts as unmodifiable list which can be
+	 * shared by multiple threads (see XBRL.freeze())
+	 */
+	protected void freezeFacts() {
+		List<Fact> result = new ArrayList();
+		explodeList(this, result);
+		explodedFacts = Collections.unmodifiableList(result);
+	}
 	
 	public List<Fact> getFacts(Type type) {
 		return getFacts(Arrays.asList(type),true,0, Integer.MAX_VALUE);
@@ -296,7 +439,7 @@ public class Fact implements Serializable, Comparable<Fact> {
 		sb.append(this.getLevel());
 		sb.append(")");
 		sb.append("[");
-		sb.append(this.children.size());
+		sb.append(this.getChildren().size());
 		sb.append("]");
 
 		sb.append(this.getAttributes().toString());
@@ -310,7 +453,7 @@ public class Fact implements Serializable, Comparable<Fact> {
 	public int compareTo(Fact o) {
 		int result = this.getType().compareTo(o.getType());
 		if (result == 0) {
-			result = Long.valueOf(this.line).compareTo(o.getLine());
+			result = this.getLine().compareTo(o.getLine());
 		}
 		return result;
 	}
@@ -320,7 +463,7 @@ public class Fact implements Serializable, Comparable<Fact> {
 	 * @return
 	 */
 	protected Long getLine() {
-		return this.line;
+		return columns != null ? columns.getLine(id) : this.line;
 	}
 
 	/**
@@ -355,7 +498,13 @@ public class Fact implements Serializable, Comparable<Fact> {
 	}
 
 	public void index() {
-		this.getXBRL().getIndex().add(this);
+		if (isRegistered()) {
+			this.getXBRL().getIndex().add(this);
+		}
+	}
+
+	private boolean isRegistered() {
+		return this.xbrl != null && this.id >= 0;
 	}
 	
     @JsonIgnore
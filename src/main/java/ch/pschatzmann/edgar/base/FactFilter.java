@@ -0,0 +1,166 @@
+package ch.pschatzmann.edgar.base;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import ch.pschatzmann.edgar.base.Fact.Attribute;
+import ch.pschatzmann.edgar.base.Fact.DataType;
+import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.utils.Utils;
+
+/**
+ * Selection of the values which is applied by the parsers (see
+ * XBRL.setFactFilter). Values which do not match are dropped together with
+ * their html child nodes before they are registered in the XBRL. The contexts
+ * are only kept if they are used by a selected value. The document information
+ * (dei) is always kept.
+ *
+ * Values which refer to a context or unit which is defined only after the
+ * value in the document can not be checked for the segments and units and are
+ * kept.
+ *
+ * @author pschatzmann
+ *
+ */
+public class FactFilter implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private Set<String> parameterNames = null;
+	private Set<String> units = null;
+	private Set<DataType> dataTypes = null;
+	private boolean withoutSegments = false;
+
+	/**
+	 * Selects the values with the indicated parameter names. If nothing is
+	 * defined we select all parameters.
+	 *
+	 * @param parameterNames
+	 * @return
+	 */
+	public FactFilter setParameterNames(Collection<String> parameterNames) {
+		this.parameterNames = parameterNames == null || parameterNames.isEmpty() ? null
+				: new HashSet(parameterNames);
+		return this;
+	}
+
+	public Collection<String> getParameterNames() {
+		return parameterNames;
+	}
+
+	/**
+	 * Selects the values with the indicated units of measure (e.g. USD). The
+	 * values without unit are dropped.
+	 *
+	 * @param units
+	 * @return
+	 */
+	public FactFilter setUnits(Collection<String> units) {
+		this.units = null;
+		if (units != null && !units.isEmpty()) {
+			this.units = new HashSet();
+			for (String unit : units) {
+				this.units.add(unit.toUpperCase());
+			}
+		}
+		return this;
+	}
+
+	public Collection<String> getUnits() {
+		return units;
+	}
+
+	/**
+	 * Selects the values with the indicated data types
+	 *
+	 * @param dataTypes
+	 * @return
+	 */
+	public FactFilter setDataTypes(DataType... dataTypes) {
+		this.dataTypes = dataTypes.length == 0 ? null : EnumSet.copyOf(Arrays.asList(dataTypes));
+		return this;
+	}
+
+	public Collection<DataType> getDataTypes() {
+		return dataTypes;
+	}
+
+	/**
+	 * Selects only the values with a context w/o segments
+	 *
+	 * @param withoutSegments
+	 * @return
+	 */
+	public FactFilter setWithoutSegments(boolean withoutSegments) {
+		this.withoutSegments = withoutSegments;
+		return this;
+	}
+
+	public boolean isWithoutSegments() {
+		return withoutSegments;
+	}
+
+	/**
+	 * Checks the attributes of a value node when the parser starts to process
+	 * it. If we return false the node and its children can be skipped.
+	 *
+	 * @param xbrl
+	 * @param parameterName
+	 * @param contextRef
+	 * @param unitRef
+	 * @return
+	 */
+	public boolean isCandidate(XBRL xbrl, String parameterName, String contextRef, String unitRef) {
+		if (parameterNames != null && !parameterNames.contains(parameterName)) {
+			return false;
+		}
+		if (withoutSegments && Boolean.TRUE.equals(hasSegments(xbrl, contextRef))) {
+			return false;
+		}
+		if (units != null) {
+			if (Utils.isEmpty(unitRef)) {
+				return false;
+			}
+			if (!xbrl.find(unitRef, Type.unit).isEmpty() && !units.contains(LabelAPI.toUOMLabel(xbrl, unitRef))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the completely parsed value node
+	 *
+	 * @param xbrl
+	 * @param value
+	 * @return
+	 */
+	public boolean isAccepted(XBRL xbrl, Fact value) {
+		return isCandidate(xbrl, value.getParameterName(), value.getAttribute(Attribute.contextRef),
+				value.getAttribute(Attribute.unitRef))
+				&& (dataTypes == null || dataTypes.contains(value.getDataType()));
+	}
+
+	/**
+	 * Determines if the context contains segments. If the context is not known
+	 * yet we return null.
+	 *
+	 * @param xbrl
+	 * @param contextRef
+	 * @return
+	 */
+	protected Boolean hasSegments(XBRL xbrl, String contextRef) {
+		Fact context = xbrl.getPendingContext(contextRef);
+		if (context == null && contextRef != null) {
+			for (Fact f : xbrl.find(contextRef, Type.context)) {
+				if (contextRef.equals(f.getAttribute(Attribute.id))) {
+					context = f;
+				}
+			}
+		}
+		return context == null ? null : !context.getFacts(Type.explicitMember).isEmpty();
+	}
+
+}
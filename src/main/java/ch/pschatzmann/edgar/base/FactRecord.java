@@ -0,0 +1,156 @@
+package ch.pschatzmann.edgar.base;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import ch.pschatzmann.edgar.base.Fact.Attribute;
+import ch.pschatzmann.edgar.utils.Utils;
+
+/**
+ * Fully resolved numeric value which is provided by the streaming parser (see
+ * XBRL.stream). The attributes use the same names as the attributes of the
+ * FactValue, so that the records can be processed in the same way. The
+ * extended company information is not available.
+ *
+ * @author pschatzmann
+ *
+ */
+public class FactRecord implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private Map<String, String> attributes;
+
+	/**
+	 * Constructor
+	 *
+	 * @param xbrl
+	 * @param attributes
+	 *            parsed attributes of the value node
+	 * @param ctx
+	 *            resolved context or null
+	 */
+	public FactRecord(XBRL xbrl, Map<String, String> attributes, Context ctx) {
+		this.attributes = attributes;
+		LabelAPI labels = xbrl.getLabelAPI();
+		String value = Utils.str(attributes.get(Attribute.value.name()));
+		if (xbrl.isAutoScale()) {
+			value = FactValue.scale(value, getScale());
+		}
+		put(Attribute.value.name(), value);
+		put(Attribute.label.name(), labels.getLabel(getParameterName()).getLabel());
+		if (attributes.get(Attribute.unitRef.name()) != null) {
+			put(Attribute.unitRef.name(), labels.getUOMLabel(attributes.get(Attribute.unitRef.name())));
+		}
+		if (ctx != null) {
+			put(Attribute.dateLabel.name(), ctx.getDateDescription());
+			put(Attribute.date.name(), ctx.getDate());
+			put(Attribute.segment.name(), ctx.getSegmentDescription());
+			put(Attribute.segmentDimension.name(), ctx.getDimensionDescription());
+			put(Attribute.identifier.name(), ctx.getCompanyIdentifier());
+			put(Attribute.numberOfMonths.name(), "" + ctx.getMonths());
+		}
+		put(Attribute.form.name(), xbrl.getFilingInfo().getForm());
+		put(Attribute.file.name(), xbrl.getFilingInfo().getFileName());
+	}
+
+	private void put(String key, String value) {
+		if (value != null) {
+			attributes.put(key, value);
+		}
+	}
+
+	/**
+	 * Returns the attribute/value map
+	 *
+	 * @return
+	 */
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	public String getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	public String getParameterName() {
+		return attributes.get(Attribute.parameterName.name());
+	}
+
+	/**
+	 * Scaled value
+	 *
+	 * @return
+	 */
+	public String getValue() {
+		return attributes.get(Attribute.value.name());
+	}
+
+	public String getLabel() {
+		return attributes.get(Attribute.label.name());
+	}
+
+	/**
+	 * Unit of measure label
+	 *
+	 * @return
+	 */
+	public String getUnit() {
+		return Utils.notNull(attributes.get(Attribute.unitRef.name()));
+	}
+
+	public String getContextID() {
+		return attributes.get(Attribute.contextRef.name());
+	}
+
+	public String getDate() {
+		return Utils.notNull(attributes.get(Attribute.date.name()));
+	}
+
+	public String getDateLabel() {
+		return Utils.notNull(attributes.get(Attribute.dateLabel.name()));
+	}
+
+	public int getMonths() {
+		String months = attributes.get(Attribute.numberOfMonths.name());
+		return Utils.isEmpty(months) ? 0 : Integer.parseInt(months);
+	}
+
+	public String getSegment() {
+		return Utils.notNull(attributes.get(Attribute.segment.name()));
+	}
+
+	public String getSegmentDimension() {
+		return Utils.notNull(attributes.get(Attribute.segmentDimension.name()));
+	}
+
+	public String getIdentifier() {
+		return Utils.notNull(attributes.get(Attribute.identifier.name()));
+	}
+
+	public String getDecimals() {
+		return attributes.get("decimals");
+	}
+
+	/**
+	 * Number of digits by which the value was scaled (iXBRL)
+	 *
+	 * @return
+	 */
+	public int getScale() {
+		String scale = attributes.get(Attribute.scale.name());
+		return Utils.isEmpty(scale) ? 0 : Integer.parseInt(scale);
+	}
+
+	public String getForm() {
+		return attributes.get(Attribute.form.name());
+	}
+
+	public String getFile() {
+		return attributes.get(Attribute.file.name());
+	}
+
+	@Override
+	public String toString() {
+		return attributes.toString();
+	}
+
+}
@@ -0,0 +1,578 @@
+package ch.pschatzmann.edgar.base;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.utils.IntList;
+import ch.pschatzmann.edgar.utils.StringDictionary;
+
+/**
+ * Registry of all facts of a XBRL document: each fact gets a row id. In the
+ * columnar mode the fact data (type, level, line, tree relationships and the
+ * dictionary encoded attributes) is stored in column arrays and the Fact
+ * objects are only light views on a row id. This avoids the HashMap and the
+ * ArrayLists per fact.
+ * 
+ * We also keep track of the facts which are reachable from the root and index
+ * them by type, so that the facts of a type can be found without walking the
+ * tree.
+ *
+ * @author pschatzmann
+ *
+ */
+public class FactStore implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final int NONE = -1;
+	private static final int[] NO_ATTRIBUTES = new int[0];
+	private static final Type[] TYPES = Type.values();
+	private List<Fact> facts = new ArrayList();
+	private boolean columnar;
+	private BitSet reachable = new BitSet();
+	private IntList reachableIds = new IntList(1000);
+	private Map<Type, IntList> typeIndex = new EnumMap(Type.class);
+	// columns
+	private IntList types;
+	private IntList levels;
+	private IntList lines;
+	private IntList parents;
+	private IntList firstChild;
+	private IntList lastChild;
+	private IntList nextSibling;
+	private List<int[]> attributes;
+	private StringDictionary dictionary;
+
+	/**
+	 * Constructor
+	 *
+	 * @param columnar
+	 *            if true we store the fact data in columns
+	 */
+	public FactStore(boolean columnar) {
+		this.columnar = columnar;
+		if (columnar) {
+			types = new IntList(1000);
+			levels = new IntList(1000);
+			lines = new IntList(1000);
+			parents = new IntList(1000);
+			firstChild = new IntList(1000);
+			lastChild = new IntList(1000);
+			nextSibling = new IntList(1000);
+			attributes = new ArrayList(1000);
+			dictionary = new StringDictionary();
+		}
+	}
+
+	/**
+	 * Registers a new fact and returns its row id
+	 *
+	 * @param fact
+	 * @param type
+	 * @param level
+	 * @param line
+	 * @return
+	 */
+	public int add(Fact fact, Type type, int level, long line) {
+		int id = facts.size();
+		facts.add(fact);
+		if (columnar) {
+			types.add(type == null ? NONE : type.ordinal());
+			levels.add(level);
+			lines.add((int) line);
+			parents.add(NONE);
+			firstChild.add(NONE);
+			lastChild.add(NONE);
+			nextSibling.add(NONE);
+			attributes.add(NO_ATTRIBUTES);
+		}
+		return id;
+	}
+
+	/**
+	 * Defines the root of the tree
+	 *
+	 * @param root
+	 */
+	public void setRoot(Fact root) {
+		markReachable(root.getId());
+	}
+
+	/**
+	 * A child was added to the tree: if the parent is reachable from the root
+	 * the child is reachable as well and we add it to the type index
+	 *
+	 * @param parent
+	 * @param child
+	 */
+	protected void attach(int parent, int child) {
+		if (parent >= 0 && child >= 0 && reachable.get(parent) && !reachable.get(child)) {
+			markReachable(child);
+		}
+	}
+
+	/**
+	 * Marks the fact as reachable from the root (used when the facts are
+	 * restored from a snapshot)
+	 *
+	 * @param id
+	 */
+	protected void setReachable(int id) {
+		if (!reachable.get(id)) {
+			markReachable(id);
+		}
+	}
+
+	/**
+	 * Returns the ids of the reachable facts in the sequence of the tree
+	 *
+	 * @return
+	 */
+	protected IntList getReachableIds() {
+		return reachableIds;
+	}
+
+	private void markReachable(int id) {
+		reachable.set(id);
+		reachableIds.add(id);
+		Type type = facts.get(id).getType();
+		if (type != null) {
+			IntList list = typeIndex.get(type);
+			if (list == null) {
+				list = new IntList();
+				typeIndex.put(type, list);
+			}
+			list.add(id);
+		}
+	}
+
+	/**
+	 * Returns all facts which are reachable from the root in the sequence of the
+	 * tree (parents before children)
+	 *
+	 * @return
+	 */
+	public List<Fact> find() {
+		return toFacts(reachableIds, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the reachable facts of the indicated types in the sequence of the
+	 * tree
+	 *
+	 * @param types
+	 * @return
+	 */
+	public List<Fact> find(Collection<Type> types) {
+		return find(types, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the reachable facts of the indicated types within the level range
+	 * in the sequence of the tree
+	 *
+	 * @param types
+	 * @param fromLevel
+	 * @param toLevel
+	 * @return
+	 */
+	public List<Fact> find(Collection<Type> types, int fromLevel, int toLevel) {
+		if (types.isEmpty()) {
+			return new ArrayList();
+		} else if (types.size() == 1) {
+			IntList list = typeIndex.get(types.iterator().next());
+			return list == null ? new ArrayList() : toFacts(list, fromLevel, toLevel);
+		}
+		// combine the ids of multiple types
+		IntList ids = new IntList();
+		for (Type type : EnumSet.copyOf(types)) {
+			IntList list = typeIndex.get(type);
+			for (int j = 0; list != null && j < list.size(); j++) {
+				ids.add(list.get(j));
+			}
+		}
+		int[] sorted = ids.toArray();
+		Arrays.sort(sorted);
+		List<Fact> result = new ArrayList(sorted.length);
+		for (int id : sorted) {
+			addInRange(result, id, fromLevel, toLevel);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of reachable facts of the indicated type
+	 *
+	 * @param type
+	 * @return
+	 */
+	public int size(Type type) {
+		IntList list = typeIndex.get(type);
+		return list == null ? 0 : list.size();
+	}
+
+	private List<Fact> toFacts(IntList ids, int fromLevel, int toLevel) {
+		List<Fact> result = new ArrayList(ids.size());
+		for (int j = 0; j < ids.size(); j++) {
+			addInRange(result, ids.get(j), fromLevel, toLevel);
+		}
+		return result;
+	}
+
+	private void addInRange(List<Fact> result, int id, int fromLevel, int toLevel) {
+		Fact fact = facts.get(id);
+		if (fromLevel <= 0 && toLevel == Integer.MAX_VALUE) {
+			result.add(fact);
+		} else {
+			int level = fact.getLevel();
+			if (level >= fromLevel && level <= toLevel) {
+				result.add(fact);
+			}
+		}
+	}
+
+	/**
+	 * Moves all facts of the store of a separately parsed document into this
+	 * store. The facts are appended in the sequence of their creation, so the
+	 * row id of each fact is shifted by size()-1: the root of the other store
+	 * is replaced by our root.
+	 *
+	 * @param other
+	 * @param xbrl
+	 * @param root
+	 */
+	protected void merge(FactStore other, XBRL xbrl, Fact root) {
+		int offset = size() - 1;
+		int rootId = root.getId();
+		Fact otherRoot = other.get(0);
+		List<Fact> children = otherRoot.getChildren();
+		for (int k = 1; k < other.size(); k++) {
+			Fact fact = other.get(k);
+			int id = facts.size();
+			facts.add(fact);
+			if (columnar) {
+				types.add(other.types.get(k));
+				levels.add(other.levels.get(k));
+				lines.add(other.lines.get(k));
+				int parent = other.parents.get(k);
+				parents.add(parent == 0 ? rootId : shift(parent, offset));
+				firstChild.add(shift(other.firstChild.get(k), offset));
+				lastChild.add(shift(other.lastChild.get(k), offset));
+				nextSibling.add(shift(other.nextSibling.get(k), offset));
+				attributes.add(recode(other, other.attributes.get(k)));
+			}
+			fact.rebind(xbrl, id, columnar ? this : null);
+		}
+		// keep the tree sequence of the reachable facts
+		for (int k = 1; k < other.size(); k++) {
+			if (other.reachable.get(k)) {
+				markReachable(k + offset);
+			}
+		}
+		for (Fact child : children) {
+			root.addChild(child);
+			child.getParents().remove(otherRoot);
+			child.addParent(root);
+		}
+		other.clear();
+	}
+
+	private static int shift(int id, int offset) {
+		return id == NONE ? NONE : id + offset;
+	}
+
+	private int[] recode(FactStore other, int[] row) {
+		int[] result = new int[row.length];
+		for (int j = 0; j < row.length; j++) {
+			result[j] = dictionary.encode(other.dictionary.decode(row[j]));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the fact for the indicated row id
+	 *
+	 * @param id
+	 * @return
+	 */
+	public Fact get(int id) {
+		return facts.get(id);
+	}
+
+	/**
+	 * Number of registered facts
+	 *
+	 * @return
+	 */
+	public int size() {
+		return facts.size();
+	}
+
+	/**
+	 * Returns true if the fact data is stored in columns
+	 *
+	 * @return
+	 */
+	public boolean isColumnar() {
+		return columnar;
+	}
+
+	protected Type getType(int id) {
+		int ordinal = types.get(id);
+		return ordinal == NONE ? null : TYPES[ordinal];
+	}
+
+	protected int getLevel(int id) {
+		return levels.get(id);
+	}
+
+	protected void setLevel(int id, int level) {
+		levels.set(id, level);
+	}
+
+	protected long getLine(int id) {
+		return lines.get(id);
+	}
+
+	/**
+	 * Returns the attribute value of the indicated row
+	 *
+	 * @param id
+	 * @param key
+	 * @return
+	 */
+	protected String getAttribute(int id, String key) {
+		int pos = indexOf(attributes.get(id), dictionary.find(key));
+		return pos < 0 ? null : dictionary.decode(attributes.get(id)[pos + 1]);
+	}
+
+	protected boolean containsAttribute(int id, String key) {
+		return indexOf(attributes.get(id), dictionary.find(key)) >= 0;
+	}
+
+	/**
+	 * Adds or replaces an attribute value and returns the prior value
+	 *
+	 * @param id
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	protected String putAttribute(int id, String key, String value) {
+		int[] row = attributes.get(id);
+		int pos = indexOf(row, dictionary.find(key));
+		if (pos >= 0) {
+			String result = dictionary.decode(row[pos + 1]);
+			row[pos + 1] = dictionary.replace(row[pos + 1], value);
+			return result;
+		}
+		row = Arrays.copyOf(row, row.length + 2);
+		row[row.length - 2] = dictionary.encode(key);
+		row[row.length - 1] = dictionary.encode(value);
+		attributes.set(id, row);
+		return null;
+	}
+
+	protected String removeAttribute(int id, String key) {
+		int[] row = attributes.get(id);
+		int pos = indexOf(row, dictionary.find(key));
+		if (pos < 0) {
+			return null;
+		}
+		String result = dictionary.decode(row[pos + 1]);
+		int[] newRow = new int[row.length - 2];
+		System.arraycopy(row, 0, newRow, 0, pos);
+		System.arraycopy(row, pos + 2, newRow, pos, row.length - pos - 2);
+		attributes.set(id, newRow);
+		return result;
+	}
+
+	protected int getAttributeCount(int id) {
+		return attributes.get(id).length / 2;
+	}
+
+	/**
+	 * Returns a map which reads and writes the attribute columns of the
+	 * indicated row
+	 *
+	 * @param id
+	 * @return
+	 */
+	protected Map<String, String> getAttributes(int id) {
+		return new RowAttributes(id);
+	}
+
+	/**
+	 * Links the child to the parent row
+	 *
+	 * @param parent
+	 * @param child
+	 */
+	protected void addChild(int parent, int child) {
+		int last = lastChild.get(parent);
+		if (last == NONE) {
+			firstChild.set(parent, child);
+		} else {
+			nextSibling.set(last, child);
+		}
+		lastChild.set(parent, child);
+	}
+
+	protected void setParent(int id, int parent) {
+		parents.set(id, parent);
+	}
+
+	/**
+	 * Returns the children of the indicated row
+	 *
+	 * @param id
+	 * @return
+	 */
+	protected List<Fact> getChildren(int id) {
+		List<Fact> result = new ArrayList();
+		for (int child = firstChild.get(id); child != NONE; child = nextSibling.get(child)) {
+			result.add(facts.get(child));
+		}
+		return result;
+	}
+
+	protected List<Fact> getParents(int id) {
+		int parent = parents.get(id);
+		return parent == NONE ? new ArrayList() : new ArrayList(Collections.singletonList(facts.get(parent)));
+	}
+
+	/**
+	 * Clears the attributes and the relationships of the indicated row
+	 *
+	 * @param id
+	 */
+	protected void clear(int id) {
+		attributes.set(id, NO_ATTRIBUTES);
+		firstChild.set(id, NONE);
+		lastChild.set(id, NONE);
+		parents.set(id, NONE);
+	}
+
+	/**
+	 * Removes all facts
+	 */
+	public void clear() {
+		facts.clear();
+		reachable.clear();
+		reachableIds.clear();
+		typeIndex.clear();
+		if (columnar) {
+			types.clear();
+			levels.clear();
+			lines.clear();
+			parents.clear();
+			firstChild.clear();
+			lastChild.clear();
+			nextSibling.clear();
+			attributes.clear();
+			dictionary.clear();
+		}
+	}
+
+	private static int indexOf(int[] row, int keyCode) {
+		if (keyCode != StringDictionary.NULL) {
+			for (int j = 0; j < row.length; j += 2) {
+				if (row[j] == keyCode) {
+					return j;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Map view on the attribute columns of a row
+	 */
+	private class RowAttributes extends AbstractMap<String, String> implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private int id;
+
+		RowAttributes(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public String get(Object key) {
+			return key instanceof String ? getAttribute(id, (String) key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && containsAttribute(id, (String) key);
+		}
+
+		@Override
+		public String put(String key, String value) {
+			return putAttribute(id, key, value);
+		}
+
+		@Override
+		public String remove(Object key) {
+			return key instanceof String ? removeAttribute(id, (String) key) : null;
+		}
+
+		@Override
+		public int size() {
+			return getAttributeCount(id);
+		}
+
+		@Override
+		public void clear() {
+			attributes.set(id, NO_ATTRIBUTES);
+		}
+
+		@Override
+		public Set<Entry<String, String>> entrySet() {
+			// we iterate over a snapshot so that the map can be updated while
+			// iterating
+			final int[] row = attributes.get(id).clone();
+			return new AbstractSet<Entry<String, String>>() {
+				@Override
+				public Iterator<Entry<String, String>> iterator() {
+					return new Iterator<Entry<String, String>>() {
+						private int pos = 0;
+
+						@Override
+						public boolean hasNext() {
+							return pos < row.length;
+						}
+
+						@Override
+						public Entry<String, String> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							Entry<String, String> result = new SimpleImmutableEntry(dictionary.decode(row[pos]),
+									dictionary.decode(row[pos + 1]));
+							pos += 2;
+							return result;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return row.length / 2;
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package ch.pschatzmann.edgar.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import ch.pschatzmann.edgar.base.Fact.Attribute;
+import ch.pschatzmann.edgar.base.Fact.DataType;
+import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.utils.Utils;
+
+/**
+ * Collects the parsed value nodes in streaming mode and passes the numeric
+ * values as FactRecords to the consumer. A value is emitted as soon as its
+ * context, its unit and the form are known. Otherwise we keep the (small)
+ * attribute map until the end of the parsing.
+ *
+ * @author pschatzmann
+ *
+ */
+public class FactStream {
+	private XBRL xbrl;
+	private Consumer<FactRecord> consumer;
+	private List<Map<String, String>> pending = new ArrayList();
+	private long count = 0;
+
+	public FactStream(XBRL xbrl, Consumer<FactRecord> consumer) {
+		this.xbrl = xbrl;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Values of the document information (dei) are kept in the XBRL because
+	 * they are needed to determine the company and the form.
+	 *
+	 * @param namespaceOrName
+	 *            namespace uri (xml) or the qualified name (iXBRL) of the value
+	 * @return
+	 */
+	public static boolean isDocumentInformation(String namespaceOrName) {
+		return namespaceOrName != null && (namespaceOrName.contains("/dei/") || namespaceOrName.startsWith("dei:"));
+	}
+
+	/**
+	 * Processes a parsed value node
+	 *
+	 * @param fact
+	 */
+	public void add(Fact fact) {
+		if (fact.getDataType() == DataType.number) {
+			Map<String, String> attributes = new HashMap(fact.getAttributes());
+			if (isResolvable(attributes)) {
+				emit(attributes);
+			} else {
+				pending.add(attributes);
+			}
+		}
+	}
+
+	/**
+	 * Emits the values which could not be resolved during the parsing
+	 */
+	public void flush() {
+		for (Map<String, String> attributes : pending) {
+			emit(attributes);
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Number of emitted records
+	 *
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	protected boolean isResolvable(Map<String, String> attributes) {
+		String unitRef = attributes.get(Attribute.unitRef.name());
+		return !Utils.isEmpty(xbrl.getFilingInfo().getForm())
+				&& isDefined(attributes.get(Attribute.contextRef.name()), Type.context)
+				&& (unitRef == null || isDefined(unitRef, Type.unit));
+	}
+
+	private boolean isDefined(String id, Type type) {
+		if (id != null) {
+			for (Fact f : xbrl.find(id, type)) {
+				if (id.equals(f.getAttribute(Attribute.id))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	protected void emit(Map<String, String> attributes) {
+		Context ctx = xbrl.getContextByID(attributes.get(Attribute.contextRef.name()));
+		consumer.accept(new FactRecord(xbrl, attributes, ctx.isValid() ? ctx : null));
+		count++;
+	}
+
+}
@@ -1,9 +1,12 @@
 package ch.pschatzmann.edgar.base;
 
 import java.io.Serializable;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -23,16 +26,54 @@ public class FactValue extends Fact implements Serializable {
 	private Context ctx;
 	private boolean isAttributesSetup = false;
 	private String value = null;
+	private BigDecimal number = null;
+	private DataType dataType = null;
+	private Integer scale = null;
 
 	public FactValue(XBRL xbrl, Type type, int level, long line) {
 		super(xbrl, type, level, line);
 	}
+
+	protected FactValue(XBRL xbrl, Type type, int level, long line, boolean register) {
+		super(xbrl, type, level, line, register);
+	}
 	
 	public FactValue(FactValue source) {
 		super(source);
 		this.ctx = source.ctx;
 		this.isAttributesSetup = source.isAttributesSetup;
 		this.value = source.value;
+		this.number = source.number;
+		this.dataType = source.dataType;
+		this.scale = source.scale;
+	}
+
+	/**
+	 * Adds attribute information. The data type is determined only once when
+	 * the value is set.
+	 */
+	@Override
+	public void put(String key, String value) {
+		super.put(key, value);
+		if (Attribute.value.name().equals(key)) {
+			this.dataType = getDataType(value);
+			this.scale = null;
+		} else if (Attribute.scale.name().equals(key)) {
+			this.scale = null;
+		}
+	}
+
+	/**
+	 * Determines if the value content is numeric, a string or a html string
+	 * 
+	 * @return
+	 */
+	@Override
+	public DataType getDataType() {
+		if (dataType == null) {
+			dataType = super.getDataType();
+		}
+		return dataType;
 	}
 
 	/**
@@ -112,6 +153,18 @@ public class FactValue extends Fact implements Serializable {
 		return Utils.notNull(this.getAttribute("prefix"));		
 	}
 
+	/**
+	 * Determines all lazily calculated information (see XBRL.freeze())
+	 */
+	protected void freeze() {
+		getAttributes();
+		getValue();
+		getDataType();
+		getScale();
+		getNumber();
+		getContext();
+	}
+
 	/**
 	 * Returns the value attribute value. For ixbrl we need to explode the child
 	 * nodes to determine the content
@@ -139,51 +192,102 @@ public class FactValue extends Fact implements Serializable {
 	protected void setValue(String value) {
 		this.put("value", value);
 		this.value = value;
+		this.number = null;
+	}
+
+	/**
+	 * Returns the (scaled) value as number. The value is parsed only once. If
+	 * the value is not numeric we return null.
+	 * 
+	 * @return
+	 */
+	@JsonIgnore
+	public BigDecimal getNumber() {
+		if (number == null && getDataType() == DataType.number) {
+			number = toNumber(getValue());
+		}
+		return number;
+	}
+
+	/**
+	 * Returns the (scaled) value as double. If the value is not numeric we
+	 * return 0.
+	 * 
+	 * @return
+	 */
+	@JsonIgnore
+	public double getDoubleValue() {
+		BigDecimal result = getNumber();
+		return result == null ? 0.0 : result.doubleValue();
 	}
 	
+	/**
+	 * Assembles the text of the continuedAt chain in one pass. The
+	 * continuations are looked up by id and the text is limited to the max
+	 * field size.
+	 * 
+	 * @param sb
+	 * @param continuedAt
+	 */
 	private void updateValueFromContinuations(StringBuffer sb, String continuedAt) {
-		while (!Utils.isEmpty(continuedAt)) {
-			Fact f = getContinuationById(continuedAt);	
+		int maxLength = this.getXBRL().getMaxFieldSize();
+		Set<String> visited = new HashSet();
+		while (!Utils.isEmpty(continuedAt) && sb.length() < maxLength && visited.add(continuedAt)) {
+			Fact f = this.getXBRL().getContinuation(continuedAt);
+			if (f == null) {
+				LOG.warn("The continuation " + continuedAt + " does not exist");
+				break;
+			}
 			for (Fact c : f.getChildren()) {
-				if (c.getType()!=Type.continuation) {
-					for (Fact c1 : c.getFacts()) {
-						String str = Utils.str(c1.getAttribute("value"));
-						if (!Utils.isEmpty(str)) {
-							sb.append(str);
-							sb.append(" ");
-						}
-					}
+				if (c.getType() != Type.continuation) {
+					appendText(c, sb, maxLength);
 				}
 			}
 			continuedAt = f.getAttribute("continuedAt");
 		}
-		value = sb.toString();
+		value = limit(sb, maxLength);
 		this.put("value", value);
 	}
 
 	private void updateValuesFromChildren(StringBuffer sb) {
 		if (!Utils.isEmpty(this.getAttribute("parameterName"))) {
-			for (Fact f : this.getFacts()) {
-				if (f != this) {
-					String str = f.getAttribute("value");
-					if (!Utils.isEmpty(str)) {
-						sb.append(str);
-						sb.append(" ");
-					}
-				}
+			int maxLength = this.getXBRL().getMaxFieldSize();
+			for (Fact f : this.getChildren()) {
+				appendText(f, sb, maxLength);
 			}
-			value = sb.toString();
+			value = limit(sb, maxLength);
 			this.put("value", value);
 		}
 	}
-	
-	private Fact getContinuationById(String id) {
-		for (Fact f : this.getXBRL().find(id)) {
-			if (f.getType()==Type.continuation && f.getAttribute("id").equals(id)) {
-				return f;
+
+	/**
+	 * Appends the texts of the node and its children (in the inorder sequence)
+	 * w/o exploding the subtree
+	 * 
+	 * @param fact
+	 * @param sb
+	 * @param maxLength
+	 */
+	private static void appendText(Fact fact, StringBuffer sb, int maxLength) {
+		if (sb.length() < maxLength) {
+			String str = fact.getAttribute("value");
+			if (!Utils.isEmpty(str)) {
+				sb.append(str);
+				sb.append(" ");
+			}
+			for (Fact child : fact.getChildren()) {
+				appendText(child, sb, maxLength);
 			}
 		}
-		return null;
+	}
+
+	private String limit(StringBuffer sb, int maxLength) {
+		if (sb.length() > maxLength) {
+			LOG.warn("The content of " + getParameterName() + " is longer then " + maxLength
+					+ " characters. The content is cut off");
+			sb.setLength(maxLength);
+		}
+		return sb.toString();
 	}
 
 	/**
@@ -231,7 +335,7 @@ public class FactValue extends Fact implements Serializable {
 	@JsonIgnore
 	public Context getContext() {
 		if (ctx == null) {
-			ctx = new Context(this.getXBRL(), this.getAttribute(Attribute.contextRef));
+			ctx = this.getXBRL().getContextByID(this.getAttribute(Attribute.contextRef));
 			if (!ctx.isValid()) {
 				ctx = null;
 			}
@@ -282,14 +386,17 @@ public class FactValue extends Fact implements Serializable {
 	 * @return
 	 */
 	public int getScale() {
-		int result = 0;
-		if (getDataType()==DataType.number) {		
-			String scale = this.getAttribute(Attribute.scale);
-			if (!Utils.isEmpty(scale)) {
-				result = Integer.parseInt(scale);
-			} 
+		if (scale == null) {
+			int result = 0;
+			if (getDataType()==DataType.number) {		
+				String scale = this.getAttribute(Attribute.scale);
+				if (!Utils.isEmpty(scale)) {
+					result = Integer.parseInt(scale);
+				} 
+			}
+			scale = result;
 		}
-		return result;
+		return scale;
 	}
 	
 	/**
@@ -298,20 +405,44 @@ public class FactValue extends Fact implements Serializable {
 	 * @return
 	 */
 	public String scale(String value) {
-		int scale = getScale();
-		if (scale>0) {
-			// positive scales
-			StringBuffer sb = new StringBuffer(value.trim());
-			sb.append(Utils.repeat("0",scale));
-			return sb.toString();
-		} else if (scale < 0) {
-			// negative scales
-			double doubleValue = Utils.toDouble(value) / Math.pow(10,scale);
-			return String.valueOf(doubleValue);
-		} else {
-			// no scale
-			return value;
+		return scale(value, getScale());
+	}
+
+	/**
+	 * Scales the value by the indicated number of digits
+	 * @param value
+	 * @param scale
+	 * @return
+	 */
+	public static String scale(String value, int scale) {
+		if (scale != 0) {
+			// we move the decimal point so that decimals (e.g. 2.7 millions) and
+			// negative scales (e.g. percentages) are handled correctly
+			BigDecimal number = toNumber(value);
+			if (number != null) {
+				return number.movePointRight(scale).toPlainString();
+			}
 		}
+		// no scale
+		return value;
+	}
+
+	/**
+	 * Converts a numeric string to a BigDecimal. Returns null if the value is
+	 * not numeric.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static BigDecimal toNumber(String value) {
+		if (value != null) {
+			try {
+				return new BigDecimal(value.trim());
+			} catch (NumberFormatException ex) {
+				LOG.debug("Not a number: " + value);
+			}
+		}
+		return null;
 	}
 
 
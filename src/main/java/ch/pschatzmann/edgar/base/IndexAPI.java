@@ -3,25 +3,28 @@ package ch.pschatzmann.edgar.base;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 
 import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.utils.IntList;
 import ch.pschatzmann.edgar.utils.Utils;
 
 /**
- * Index to find facts by attribute values. All attributes are indexed
- * 
+ * Index to find facts by attribute values. All attributes are indexed. For
+ * each value we keep a sorted posting list of the fact row ids (see
+ * FactStore), so that adding a fact and intersecting the results of multiple
+ * values is cheap.
+ *
  * @author pschatzmann
  *
  */
 
 public class IndexAPI  implements Serializable {
-	private Map<String, List<Fact>> index = new HashMap();
+	private Map<String, IntList> index = new HashMap();
+	private FactStore store;
 
 	public void add(Fact fact) {
 		add(fact.getType().name(),fact);
@@ -45,53 +48,193 @@ public class IndexAPI  implements Serializable {
 	}
 
 	protected void add1(String value, Fact fact) {
-		List<Fact> list = index.get(value);
+		if (store == null) {
+			store = fact.getXBRL().getFactStore();
+		}
+		IntList list = index.get(value);
 		if (list == null) {
-			list = new ArrayList();
+			list = new IntList(2);
 			index.put(value, list);
+		}
+		addId(list, fact.getId());
+	}
 
+	private static void addId(IntList list, int id) {
+		// facts are usually indexed in the sequence of their creation
+		if (list.isEmpty() || list.last() < id) {
+			list.add(id);
+		} else {
+			int pos = list.binarySearch(id);
+			if (pos < 0) {
+				list.insert(-pos - 1, id);
+			}
 		}
-		if (!list.contains(fact)) {
-			list.add(fact);
+	}
+
+	/**
+	 * Adds the entries of the index of a separately parsed document. The row ids
+	 * of the other index are shifted by the indicated offset.
+	 *
+	 * @param other
+	 * @param offset
+	 * @param store
+	 */
+	protected void merge(IndexAPI other, int offset, FactStore store) {
+		this.store = store;
+		for (Map.Entry<String, IntList> e : other.index.entrySet()) {
+			IntList otherList = e.getValue();
+			IntList list = index.get(e.getKey());
+			if (list == null) {
+				list = new IntList(otherList.size());
+				index.put(e.getKey(), list);
+			}
+			for (int j = 0; j < otherList.size(); j++) {
+				addId(list, otherList.get(j) + offset);
+			}
 		}
+		other.clear();
+	}
+
+	/**
+	 * Returns the posting lists by indexed value
+	 *
+	 * @return
+	 */
+	protected Map<String, IntList> getPostingLists() {
+		return index;
+	}
+
+	/**
+	 * Restores the posting list of a value (e.g. from a snapshot)
+	 *
+	 * @param value
+	 * @param ids
+	 * @param store
+	 */
+	protected void putPostingList(String value, IntList ids, FactStore store) {
+		this.store = store;
+		index.put(value, ids);
 	}
 
 	/**
 	 * Find all facts which contain the indicated string
-	 * 
+	 *
 	 * @param value
 	 * @return
 	 */
 	public List<Fact> find(String value) {
-		return index.get(value);
+		IntList list = index.get(value);
+		if (list == null) {
+			return null;
+		}
+		List<Fact> result = new ArrayList(list.size());
+		for (int j = 0; j < list.size(); j++) {
+			result.add(store.get(list.get(j)));
+		}
+		return result;
 	}
 
 	/**
 	 * Find all facts which contain the indicated value and are of the correct
-	 * type.
-	 * 
+	 * type. The result is sorted by type and row id.
+	 *
 	 * @param value
 	 * @param types
 	 * @return
 	 */
 	public Collection<Fact> find(String value, Collection<Type> types) {
-		Collection<Fact> result = new TreeSet();
-		Set<String> typesSet = new HashSet(types);
-		Collection<Fact> indexResult = index.get(value);
-		if (indexResult != null) {
-			for (Fact f : indexResult) {
-				if (f != null && (typesSet.contains(f.getType()))) {
+		IntList list = index.get(value);
+		return list == null ? new ArrayList() : filter(list, types);
+	}
+
+	/**
+	 * Finds the facts which contain all the indicated values and are of the
+	 * correct type. Empty values are ignored. If no value is provided we return
+	 * null.
+	 *
+	 * @param values
+	 * @param types
+	 * @return
+	 */
+	public Collection<Fact> find(Collection<String> values, Collection<Type> types) {
+		List<IntList> lists = new ArrayList();
+		for (String value : values) {
+			if (!value.isEmpty()) {
+				IntList list = index.get(value);
+				if (list == null) {
+					return new ArrayList();
+				}
+				lists.add(list);
+			}
+		}
+		if (lists.isEmpty()) {
+			return null;
+		}
+		lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+		return filter(intersect(lists), types);
+	}
+
+	/**
+	 * Intersection of sorted posting lists: we start with the smallest list and
+	 * gallop through the others
+	 *
+	 * @param lists
+	 * @return
+	 */
+	protected IntList intersect(List<IntList> lists) {
+		IntList smallest = lists.get(0);
+		if (lists.size() == 1) {
+			return smallest;
+		}
+		IntList result = new IntList(smallest.size());
+		int[] positions = new int[lists.size()];
+		for (int j = 0; j < smallest.size(); j++) {
+			int id = smallest.get(j);
+			boolean found = true;
+			for (int l = 1; l < lists.size() && found; l++) {
+				IntList list = lists.get(l);
+				positions[l] = list.gallop(id, positions[l]);
+				if (positions[l] >= list.size()) {
+					return result;
+				}
+				found = list.get(positions[l]) == id;
+			}
+			if (found) {
+				result.add(id);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Determines the facts of the posting list which have one of the indicated
+	 * types
+	 *
+	 * @param list
+	 * @param types
+	 * @return
+	 */
+	protected List<Fact> filter(IntList list, Collection<Type> types) {
+		List<Fact> result = new ArrayList();
+		// sort by type (in the sequence of the enum) and row id
+		for (Type type : sorted(types)) {
+			for (int j = 0; j < list.size(); j++) {
+				Fact f = store.get(list.get(j));
+				if (f.getType() == type) {
 					result.add(f);
 				}
 			}
 		}
 		return result;
+	}
 
+	private Collection<Type> sorted(Collection<Type> types) {
+		return types.size() <= 1 ? types : EnumSet.copyOf(types);
 	}
 
 	/**
 	 * Finds the first instance. Returns null if nothing is matching
-	 * 
+	 *
 	 * @param value
 	 * @param type
 	 * @return
@@ -99,10 +242,61 @@ public class IndexAPI  implements Serializable {
 	public Fact find1(String value, Collection<Type> type) {
 		return find1(value, type, null);
 	}
-	
+
 	public Fact find1(String value, Collection<Type> type, Fact defaultValue) {
-		Collection<Fact> result = find(value, type);
-		return result == null ? defaultValue : result.isEmpty() ? defaultValue : result.iterator().next();
+		IntList list = index.get(value);
+		if (list != null) {
+			for (Type t : sorted(type)) {
+				for (int j = 0; j < list.size(); j++) {
+					Fact f = store.get(list.get(j));
+					if (f.getType() == t) {
+						return f;
+					}
+				}
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Groups all facts of the indicated type by the indexed values in one pass
+	 * over the index. For each value we get the same result as with
+	 * find(value, type).
+	 *
+	 * @param type
+	 * @return
+	 */
+	public Map<String, List<Fact>> group(Type type) {
+		Map<String, List<Fact>> result = new HashMap();
+		if (store == null) {
+			return result;
+		}
+		// the facts of one type are usually in a small range of row ids
+		int first = -1;
+		int last = -1;
+		for (int id = 0; id < store.size(); id++) {
+			if (store.get(id).getType() == type) {
+				first = first < 0 ? id : first;
+				last = id;
+			}
+		}
+		if (first >= 0) {
+			for (Map.Entry<String, IntList> e : index.entrySet()) {
+				IntList list = e.getValue();
+				List<Fact> facts = null;
+				for (int j = list.gallop(first, 0); j < list.size() && list.get(j) <= last; j++) {
+					Fact f = store.get(list.get(j));
+					if (f.getType() == type) {
+						if (facts == null) {
+							facts = new ArrayList();
+							result.put(e.getKey(), facts);
+						}
+						facts.add(f);
+					}
+				}
+			}
+		}
+		return result;
 	}
 
 	/**
@@ -110,8 +304,9 @@ public class IndexAPI  implements Serializable {
 	 */
 	public void clear() {
 		index.clear();
+		store = null;
 	}
-	
+
 	public boolean isEmpty() {
 		return this.index.isEmpty();
 	}
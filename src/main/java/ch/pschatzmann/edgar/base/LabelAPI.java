@@ -1,64 +1,52 @@
 package ch.pschatzmann.edgar.base;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import ch.pschatzmann.edgar.base.Fact.Attribute;
 import ch.pschatzmann.edgar.base.Fact.Type;
 import ch.pschatzmann.edgar.utils.Utils;
 
 /**
- * Access to the label information
+ * Access to the label information. The label nodes are grouped by parameter in
+ * one pass over the index when they are needed the first time. The selected
+ * labels are kept per parameter, so that the subsequent lookups are just a
+ * hash lookup.
  * 
  * @author pschatzmann
  *
  */
 
 public class LabelAPI implements Serializable {
+	private static final Pattern SUFFIXES = Pattern
+			.compile("\\[(Member|Abstract|Table|Axis|Domain|Text Block|Line Items)\\]");
 	private XBRL xbrl;
 	static Label emptyLabel = new Label("", "");
-	private Map<String, String> unitMap = new HashMap();
+	private Map<String, String> unitMap = new ConcurrentHashMap();
+	// the label nodes and the resolved labels are replaced together by clear()
+	private transient volatile LabelIndex labelIndex;
 
 	public LabelAPI(XBRL xbrl) {
 		this.xbrl = xbrl;
 	}
 
 	/**
-	 * Determines the Labels for the indicated parameter: Within a labelLink we find
-	 * the loc with the help of the parameter name. From there we find the
-	 * corresponding labelArc and then the related label
+	 * Determines the Labels for the indicated parameter: these are the label
+	 * nodes which are indexed with the parameter name (e.g. in the xlink:label
+	 * or id attribute)
 	 * 
 	 * @param parameter
 	 * @return
 	 */
 	public Collection<Label> getLabels(String parameter) {
-		Collection<Label> result = new HashSet();
-		for (Fact labelLinks : xbrl.find(parameter, Type.labelLink)) {
-			for (Fact f : labelLinks.getChildren(Type.loc)) {
-				String ref = Utils.lastPath(f.getAttribute(Attribute.href));
-				if (ref.equals(parameter)) {
-					String label = f.getAttribute(Attribute.label);
-					for (Fact l : xbrl.find(label, Type.labelArc)) {
-						String to = l.getAttribute(Attribute.to);
-						for (Fact l1 : xbrl.find(to, Type.label)) {
-							result.add(new Label(l1.getAttribute(Attribute.label), l1.getAttribute(Attribute.role)));
-						}
-					}
-				}
-			}
-		}
-
-		if (result.isEmpty()) {
-			for (Fact l1 : this.xbrl.find(parameter, Type.label)) {
-				result.add(new Label(l1.getAttribute(Attribute.label), l1.getAttribute(Attribute.role)));
-			}
-		}
-
-		return result;
+		return new ArrayList(getLabelInfo(parameter).labels);
 	}
 
 	/**
@@ -72,7 +60,9 @@ public class LabelAPI implements Serializable {
 	}
 
 	/**
-	 * Determines the label for the preferred role
+	 * Determines the label for the preferred role. If there is no label with
+	 * this role we use the shortest label. If no label information is available
+	 * we use the parameter.
 	 * 
 	 * @param parameter
 	 * @param preferredRole
@@ -82,39 +72,57 @@ public class LabelAPI implements Serializable {
 		if (Utils.isEmpty(parameter)) {
 			return emptyLabel;
 		}
+		return getLabelInfo(parameter).getLabel(preferredRole);
+	}
 
-		Collection<Label> labels = getLabels(parameter);
-		Label result = emptyLabel;
-		if (parameter != null) {
-			// find standard label
-			Iterator<Label> it = labels.stream().filter(l -> l.getRole().equals(preferredRole)).iterator();
-			if (it.hasNext()) {
-				result = it.next();
-			} else {
-				// find shortest entry if no standard label could be found
-				for (Label l : labels) {
-					if (result == emptyLabel || result.length() > l.length()) {
-						result = l;
-					}
+	protected Labels getLabelInfo(String parameter) {
+		LabelIndex index = getLabelIndex();
+		return index.labels.computeIfAbsent(parameter, p -> new Labels(p, toLabels(index.nodes.get(p))));
+	}
+
+	protected LabelIndex getLabelIndex() {
+		LabelIndex result = labelIndex;
+		if (result == null) {
+			synchronized (this) {
+				if (labelIndex == null) {
+					labelIndex = new LabelIndex(xbrl.getIndex().group(Type.label));
 				}
-			}
-			// use the parameter if no label information is available
-			if (result == emptyLabel && parameter != null) {
-				result = new Label(parameter, Attribute.label.name());
+				result = labelIndex;
 			}
 		}
+		return result;
+	}
 
-		result.setLabel(result.getLabel().replaceAll("\\[Member\\]", ""));
-		result.setLabel(result.getLabel().replaceAll("\\[Abstract\\]", ""));
-		result.setLabel(result.getLabel().replaceAll("\\[Table\\]", ""));
-		result.setLabel(result.getLabel().replaceAll("\\[Axis\\]", ""));
-		result.setLabel(result.getLabel().replaceAll("\\[Domain\\]", ""));
-		result.setLabel(result.getLabel().replaceAll("\\[Text Block\\]", ""));
-		result.setLabel(result.getLabel().replaceAll("\\[Line Items\\]", ""));
+	/**
+	 * Determines the labels of all parameters with label nodes
+	 */
+	protected void freeze() {
+		LabelIndex index = getLabelIndex();
+		for (String parameter : index.nodes.keySet()) {
+			getLabelInfo(parameter);
+		}
+	}
 
+	private List<Label> toLabels(List<Fact> nodes) {
+		List<Label> result = new ArrayList();
+		if (nodes != null) {
+			for (Fact f : nodes) {
+				result.add(new Label(Utils.str(f.getAttribute(Attribute.label)), f.getAttribute(Attribute.role)));
+			}
+		}
 		return result;
 	}
 
+	/**
+	 * Removes the [Member], [Axis] ... suffixes
+	 * 
+	 * @param label
+	 * @return
+	 */
+	protected static Label clean(Label label) {
+		return new Label(SUFFIXES.matcher(label.getLabel()).replaceAll(""), label.getRole());
+	}
+
 	/**
 	 * Determines the UOM label
 	 * 
@@ -126,40 +134,105 @@ public class LabelAPI implements Serializable {
 		if (!Utils.isEmpty(unitRef)) {
 			resultStr = unitMap.get(unitRef);
 			if (resultStr == null) {
-				StringBuffer result = new StringBuffer();
-
-				Fact measure = XBRL.EMPTY;
-				Fact unit = xbrl.first(xbrl.find(unitRef, Type.unit));
-				if (unit != XBRL.EMPTY) {
-					measure = xbrl.first(unit.getFacts(Type.measure));
-					if (measure != XBRL.EMPTY) {
-						result.append(Utils.lastPath(measure.getAttribute(Type.measure.name())));
-					} else {
-						Fact numerator = xbrl.first(unit.getFacts(Type.unitNumerator));
-						if (numerator != XBRL.EMPTY) {
-							measure = xbrl.first(numerator.getFacts(Type.measure));
-							result.append(Utils.lastPath(measure.getAttribute(Type.measure.name())));
-
-							Fact deNumerator = xbrl.first(unit.getFacts(Type.unitDenominator));
-							measure = xbrl.first(deNumerator.getFacts(Type.measure));
-							result.append(" / ");
-							result.append(Utils.lastPath(measure.getAttribute(Type.measure.name())));
-						} else {
-							result.append(Utils.lastPath(unitRef));
-						}
-					}
+				resultStr = toUOMLabel(xbrl, unitRef);
+				unitMap.put(unitRef, resultStr);				
+			}
+		}
+
+		return resultStr;
+	}
+
+	/**
+	 * Determines the UOM label from the measures of the unit
+	 * 
+	 * @param xbrl
+	 * @param unitRef
+	 * @return
+	 */
+	protected static String toUOMLabel(XBRL xbrl, String unitRef) {
+		StringBuffer result = new StringBuffer();
+
+		Fact measure = XBRL.EMPTY;
+		Fact unit = xbrl.first(xbrl.find(unitRef, Type.unit));
+		if (unit != XBRL.EMPTY) {
+			measure = xbrl.first(unit.getFacts(Type.measure));
+			if (measure != XBRL.EMPTY) {
+				result.append(Utils.lastPath(measure.getAttribute(Type.measure.name())));
+			} else {
+				Fact numerator = xbrl.first(unit.getFacts(Type.unitNumerator));
+				if (numerator != XBRL.EMPTY) {
+					measure = xbrl.first(numerator.getFacts(Type.measure));
+					result.append(Utils.lastPath(measure.getAttribute(Type.measure.name())));
+
+					Fact deNumerator = xbrl.first(unit.getFacts(Type.unitDenominator));
+					measure = xbrl.first(deNumerator.getFacts(Type.measure));
+					result.append(" / ");
+					result.append(Utils.lastPath(measure.getAttribute(Type.measure.name())));
 				} else {
 					result.append(Utils.lastPath(unitRef));
 				}
-				resultStr = result.toString().toUpperCase();
-				unitMap.put(unitRef, resultStr);				
 			}
+		} else {
+			result.append(Utils.lastPath(unitRef));
 		}
+		return result.toString().toUpperCase();
+	}
 
-		return resultStr;
+	/**
+	 * Releases the resolved labels. They are determined again with the next
+	 * request
+	 */
+	public synchronized void clear() {
+		labelIndex = null;
+		unitMap.clear();
 	}
 
 	public void close() {
+		clear();
+	}
+
+	/**
+	 * Label nodes grouped by parameter with the labels which were resolved
+	 * from them. Readers keep working on the instance they got, even if it is
+	 * released by clear().
+	 */
+	protected static class LabelIndex {
+		private final Map<String, List<Fact>> nodes;
+		private final Map<String, Labels> labels = new ConcurrentHashMap();
+
+		LabelIndex(Map<String, List<Fact>> nodes) {
+			this.nodes = Collections.unmodifiableMap(nodes);
+		}
+	}
+
+	/**
+	 * Labels of a parameter in the sequence of the document with the selected
+	 * (cleaned) label per role
+	 */
+	protected static class Labels implements Serializable {
+		private List<Label> labels;
+		private Map<String, Label> byRole = new HashMap();
+		private Label defaultLabel = emptyLabel;
+
+		Labels(String parameter, List<Label> labels) {
+			this.labels = labels;
+			Label shortest = emptyLabel;
+			for (Label l : labels) {
+				if (!byRole.containsKey(l.getRole())) {
+					byRole.put(l.getRole(), clean(l));
+				}
+				if (shortest == emptyLabel || shortest.length() > l.length()) {
+					shortest = l;
+				}
+			}
+			// use the parameter if no label information is available
+			defaultLabel = clean(shortest == emptyLabel ? new Label(parameter, Attribute.label.name()) : shortest);
+		}
+
+		Label getLabel(String role) {
+			Label result = byRole.get(role);
+			return result == null ? defaultLabel : result;
+		}
 	}
 
 }
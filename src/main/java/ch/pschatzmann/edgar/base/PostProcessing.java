@@ -7,7 +7,6 @@ import org.apache.log4j.Logger;
 
 import ch.pschatzmann.edgar.base.Fact.DataType;
 import ch.pschatzmann.edgar.base.Fact.Type;
-import ch.pschatzmann.edgar.utils.Utils;
 
 /**
  * Additional processing for each fact node. We try to reconstruct any missing
@@ -74,6 +73,6 @@ public class PostProcessing {
 			throw new Exception("The number of found values is " + from.size());
 		}
 		FactValue fromValue = (FactValue) from.iterator().next();
-		return Utils.toDouble(factValue.getValue()) - Utils.toDouble(fromValue.getValue());
+		return factValue.getDoubleValue() - fromValue.getDoubleValue();
 	}
 }
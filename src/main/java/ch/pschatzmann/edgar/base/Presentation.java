@@ -2,10 +2,13 @@ package ch.pschatzmann.edgar.base;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
@@ -41,6 +44,10 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 	private Double order = 0.0;
 	private String role = "";
 	private String id;
+	// lazily calculated indexes which are reset when the tree is changed
+	private transient List<Presentation> childrenEx;
+	private transient Map<Context, List<FactValue>> factsByContext;
+	private transient Set<Context> contextsEx;
 
 	Presentation(PresentationAPI presentationAPI, String id, String name) {
 		this.presentationAPI = presentationAPI;
@@ -72,6 +79,7 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 		if (!this.getChildren().contains(child)) {
 			this.children.add(child);
 			child.setParent(this);
+			resetIndex();
 		}
 	}
 
@@ -98,9 +106,82 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 	
 	protected void resetFacts() {
 		facts.clear();
+		this.factsByContext = null;
+		resetIndex();
 	}
 
-	public List<FactValue> getFacts(Collection<Context> ctx) {
+	/**
+	 * Resets the calculated subtree information of this node and all its
+	 * parents
+	 */
+	protected void resetIndex() {
+		for (Presentation p = this; p != null; p = p.getParent()) {
+			p.childrenEx = null;
+			p.contextsEx = null;
+		}
+	}
+
+	/**
+	 * Groups the value facts of this node by their context. The keys are in the
+	 * sequence of the facts.
+	 * 
+	 * @return
+	 */
+	protected Map<Context, List<FactValue>> getFactsByContext() {
+		if (factsByContext == null) {
+			Map<Context, List<FactValue>> result = new LinkedHashMap();
+			for (Fact f : getFacts()) {
+				if (f instanceof FactValue) {
+					Context ctx = ((FactValue) f).getContext();
+					if (ctx != null) {
+						List<FactValue> list = result.get(ctx);
+						if (list == null) {
+							list = new ArrayList(1);
+							result.put(ctx, list);
+						}
+						list.add((FactValue) f);
+					}
+				}
+			}
+			factsByContext = result;
+		}
+		return factsByContext;
+	}
+
+	/**
+	 * Determines the contexts of the facts of this node and all its children
+	 * in the sequence of getChildrenEx()
+	 * 
+	 * @return
+	 */
+	protected Set<Context> getContextsEx() {
+		if (contextsEx == null) {
+			Set<Context> result = new LinkedHashSet(getFactsByContext().keySet());
+			for (Presentation child : getChildren()) {
+				result.addAll(child.getContextsEx());
+			}
+			contextsEx = result;
+		}
+		return contextsEx;
+	}
+
+	/**
+	 * Determines the lazily calculated information of the node
+	 */
+	protected void freeze() {
+		getChildren();
+		getChildrenEx();
+		getFactsByContext();
+		getContextsEx();
+		getLabel();
+	}
+
+	protected static Set<Context> toSet(Collection<Context> ctxList) {
+		return ctxList instanceof Set ? (Set<Context>) ctxList : new HashSet(ctxList);
+	}
+
+	public List<FactValue> getFacts(Collection<Context> ctxList) {
+		Set<Context> ctx = toSet(ctxList);
 		List<FactValue> facts = new ArrayList();
 		for (Fact f : getFacts()) {
 			if (f instanceof FactValue) {
@@ -228,40 +309,31 @@ public class Presentation implements Serializable, Comparable<Presentation> {
   
     @JsonIgnore
 	public List<Presentation> getChildrenEx() {
-		List<Presentation> result = new ArrayList();
-		collectChildren(this, result);
-		return result;
+		if (childrenEx == null) {
+			List<Presentation> result = new ArrayList();
+			collectChildren(this, result);
+			childrenEx = result;
+		}
+		return new ArrayList(childrenEx);
 	}
 
 	public List<Presentation> getChildrenEx(List<Context> ctxList) {
+		Set<Context> ctx = toSet(ctxList);
 		List<Presentation> result = new ArrayList();
 		for (Presentation p : getChildrenEx()) {
-			if (p.hasFactsEx(ctxList)) {
+			if (p.hasFactsEx(ctx)) {
 				result.add(p);
 			}
 		}
 		return result;
 	}
 
-	protected boolean hasFactsEx(List<Context> ctxList) {
-		for (Presentation p : this.getChildrenEx()) {
-			if (p.hasFacts(ctxList)) {
-				return true;
-			}
-		}
-		return false;
+	protected boolean hasFactsEx(Collection<Context> ctxList) {
+		return !Collections.disjoint(this.getContextsEx(), toSet(ctxList));
 	}
 
-	protected boolean hasFacts(List<Context> ctxList) {
-		for (Fact f : this.getFacts()) {
-			if (f instanceof FactValue) {
-				FactValue fv = (FactValue) f;
-				if (ctxList.contains(fv.getContext())) {
-					return true;
-				}
-			}
-		}
-		return false;
+	protected boolean hasFacts(Collection<Context> ctxList) {
+		return !Collections.disjoint(this.getFactsByContext().keySet(), toSet(ctxList));
 	}
 
 	protected void collectChildren(Presentation node, List<Presentation> result) {
@@ -280,12 +352,9 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 	 */
 	public List<Context> getContexts(boolean onSpecialAxis) {
 		Set<Context> contextReferences = new TreeSet();
-		for (Presentation p : getChildrenEx()) {
-			for (Fact f : p.getFacts()) {
-				Context ctx = ((FactValue) f).getContext();
-				if (onSpecialAxis && ctx.isWithSegments() || !onSpecialAxis && !ctx.isWithSegments()) {
-					contextReferences.add(ctx);
-				}
+		for (Context ctx : getContextsEx()) {
+			if (onSpecialAxis && ctx.isWithSegments() || !onSpecialAxis && !ctx.isWithSegments()) {
+				contextReferences.add(ctx);
 			}
 		}
 		return new ArrayList(contextReferences);
@@ -293,13 +362,9 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 	
 	public List<String> getDimensions() {
 		Set<String> result = new HashSet();
-		for (Presentation p : getChildrenEx()) {
-			for (Fact f : p.getFacts()) {
-				Context ctx = ((FactValue) f).getContext();
-				for (Segment segment : ctx.getSegments()) {
-						result.add(segment.getDimension());
-					
-				}
+		for (Context ctx : getContextsEx()) {
+			for (Segment segment : ctx.getSegments()) {
+				result.add(segment.getDimension());
 			}
 		}
 		return new ArrayList(result);
@@ -307,13 +372,10 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 	
 	public List<Context> getContexts(String dimension) {
 		Set<Context> result = new TreeSet();
-		for (Presentation p : getChildrenEx()) {
-			for (Fact f : p.getFacts()) {
-				Context ctx = ((FactValue) f).getContext();
-				for (Segment segment : ctx.getSegments()) {
-					if (segment.getDimension().equals(dimension)) {
-						result.add(ctx);
-					}
+		for (Context ctx : getContextsEx()) {
+			for (Segment segment : ctx.getSegments()) {
+				if (segment.getDimension().equals(dimension)) {
+					result.add(ctx);
 				}
 			}
 		}
@@ -322,24 +384,14 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 
 	@JsonIgnore
 	public List<Context> getContexts() {
-		Set<Context> contextReferences = new TreeSet();
-		for (Presentation p : getChildrenEx()) {
-			for (Fact f : p.getFacts()) {
-				Context ctx = ((FactValue) f).getContext();
-				contextReferences.add(ctx);				
-			}
-		}
-		return new ArrayList(contextReferences);
+		return new ArrayList(new TreeSet(getContextsEx()));
 	}
 	
 	
 	public List<String> getContextIds() {
 		Set<String> contextReferences = new TreeSet();
-		for (Presentation p : getChildrenEx()) {
-			for (Fact f : p.getFacts()) {
-				Context ctx = ((FactValue) f).getContext();
-				contextReferences.add(ctx.getID());				
-			}
+		for (Context ctx : getContextsEx()) {
+			contextReferences.add(ctx.getID());
 		}
 		return new ArrayList(contextReferences);
 	}
@@ -353,9 +405,8 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 	 * @return
 	 */
 	public String getValue(Context context) {
-		Collection<String> values = new TreeSet();
 		StringBuffer sb = new StringBuffer();
-		List<FactValue> facts = this.getFacts(Arrays.asList(context));
+		List<FactValue> facts = this.getFactsByContext().getOrDefault(context, Collections.emptyList());
 		switch (facts.size()) {
 		case 0:
 			break;
@@ -445,15 +496,16 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 			sb.append("</tr>");
 			sb.append(Utils.NL);
 
+			Set<Context> ctxSet = toSet(ctxList);
 			for (Presentation p : this.getChildrenEx()) {
-				if (!this.presentationAPI.isSuppressEmptyRows() || p.hasFactValues(ctxList)) {
+				if (!this.presentationAPI.isSuppressEmptyRows() || p.hasFactValues(ctxSet)) {
 					sb.append("<tr>");
 					sb.append("<td>");
 					sb.append(Utils.repeat("-", p.getLevel() - 1));
 					sb.append(p.getLabel());
 					sb.append("</td>");
 					sb.append("<td>");
-					sb.append(p.getUOM(ctxList));
+					sb.append(p.getUOM(ctxSet));
 					sb.append("</td>");
 					
 					
@@ -488,34 +540,12 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 	}
 
 
-	protected Collection<FactValue> getFactValues(List<Context> ctxList) {
-		Collection<FactValue> result = new ArrayList();
-		for (Fact f : this.getFacts()) {
-			FactValue vf = (FactValue) f;
-			if (ctxList.contains(vf.getContext())) {
-				result.add(vf);
-			}
-		}
-		return result;
+	protected Collection<FactValue> getFactValues(Collection<Context> ctxList) {
+		return getFacts(ctxList);
 	}
 
-	protected boolean hasFactValues(List<Context> ctxList) {
-		for (Fact f : this.getFacts()) {
-			FactValue vf = (FactValue) f;
-			if (ctxList.contains(vf.getContext())) {
-				return true;
-			}
-		}
-
-		for (Presentation p : this.getChildrenEx()) {
-			for (Fact f : p.getFacts()) {
-				FactValue vf = (FactValue) f;
-				if (ctxList.contains(vf.getContext())) {
-					return true;
-				}
-			}
-		}
-		return false;
+	protected boolean hasFactValues(Collection<Context> ctxList) {
+		return hasFactsEx(ctxList);
 	}
 
 	@Override
@@ -537,6 +567,8 @@ public class Presentation implements Serializable, Comparable<Presentation> {
 	public void clear() {
 		this.children = null;
 		this.facts = null;
+		this.factsByContext = null;
+		resetIndex();
 	}
 
 	/**
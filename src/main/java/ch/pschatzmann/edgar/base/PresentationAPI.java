@@ -268,6 +268,16 @@ public class PresentationAPI implements Serializable {
 		}
 	}
 
+	/**
+	 * Determines the lazily calculated information of all nodes (see
+	 * XBRL.freeze())
+	 */
+	protected void freeze() {
+		for (Presentation p : this.getChildrenEx()) {
+			p.freeze();
+		}
+	}
+
 	public String toJson() throws JsonProcessingException {
 		return mapper.writeValueAsString(this.getRoot());
 	}
@@ -1,33 +1,43 @@
 package ch.pschatzmann.edgar.base;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.log4j.Logger;
 import org.xml.sax.SAXException;
@@ -41,12 +51,15 @@ import ch.pschatzmann.edgar.base.Fact.Attribute;
 import ch.pschatzmann.edgar.base.Fact.DataType;
 import ch.pschatzmann.edgar.base.Fact.Type;
 import ch.pschatzmann.edgar.parsing.DefaultValueFormatter;
+import ch.pschatzmann.edgar.parsing.DocumentSniffer;
 import ch.pschatzmann.edgar.parsing.HtmlToTextFormatter;
 import ch.pschatzmann.edgar.parsing.IValueFormatter;
 import ch.pschatzmann.edgar.parsing.RemoveValueFormatter;
+import ch.pschatzmann.edgar.parsing.SAXParserPool;
 import ch.pschatzmann.edgar.parsing.SaxHtmlDocumentHandler;
 import ch.pschatzmann.edgar.parsing.SaxXmlDocumentHandler;
 import ch.pschatzmann.edgar.table.ValueTable;
+import ch.pschatzmann.edgar.utils.StringPool;
 import ch.pschatzmann.edgar.utils.Utils;
 import ch.pschatzmann.edgar.utils.WontCloseBufferedInputStream;
 
@@ -78,7 +91,9 @@ public class XBRL implements Serializable {
 	public static Fact EMPTY = new Fact(null, Type.ROOT, 0, 0);
 	public static List EMPTYList = new ArrayList();
 	private IndexAPI index = new IndexAPI();
-	private Fact root = new Fact(this, Type.ROOT, 0, 0);
+	private boolean columnarStorage = Boolean.valueOf(Utils.getProperty("columnarStorage", "false"));
+	private FactStore factStore = new FactStore(columnarStorage);
+	private Fact root = createRoot();
 	private Set<URL> loadedURLs = new HashSet();
 	private boolean isSchemaRef;
 	private boolean isLinkbaseRef;
@@ -95,6 +110,27 @@ public class XBRL implements Serializable {
 	private int maxFieldSize = 1000000;
 	private Map<DataType, IValueFormatter> formatters = new HashMap();
 	private EdgarFiling lastFilingInfo = null;
+	private boolean reuseHandlers = false;
+	private boolean parallelLoading = Boolean.valueOf(Utils.getProperty("parallelLoading", "false"));
+	private boolean lazyLinkbases = Boolean.valueOf(Utils.getProperty("lazyLinkbases", "false"));
+	private boolean skipHtml = Boolean.valueOf(Utils.getProperty("skipHtml", "false"));
+	private boolean snapshots = Boolean.valueOf(Utils.getProperty("snapshots", "false"));
+	private int filingParallelism = Integer.valueOf(
+			Utils.getProperty("filingParallelism", String.valueOf(Runtime.getRuntime().availableProcessors())));
+	private List<EdgarFiling> filings = new ArrayList();
+	private Map<URL, List<String>> deferredLinkbases = new LinkedHashMap();
+	private volatile boolean linkbasesPending = false;
+	private FactFilter factFilter;
+	private Map<String, Fact> pendingContexts = new LinkedHashMap();
+	private Map<String, Fact> continuations = new HashMap();
+	private boolean sharedStringPool = Boolean.valueOf(Utils.getProperty("sharedStringPool", "false"));
+	private transient StringPool stringPool;
+	private transient SaxXmlDocumentHandler xmlHandler;
+	private transient SaxHtmlDocumentHandler htmlHandler;
+	private transient FactStream factStream;
+	private transient Map<String, Context> contexts;
+	private transient List<FactValue> combinedTextValues;
+	private volatile boolean frozen = false;
 
 	/**
 	 * Default constructor
@@ -127,6 +163,9 @@ public class XBRL implements Serializable {
 	 * @return
 	 */
 	public LabelAPI getLabelAPI() {
+		if (linkbasesPending) {
+			loadLinkbases(name -> isLabelFile(name));
+		}
 		if (this.labelAPI == null) {
 			this.labelAPI = new LabelAPI(this);
 		}
@@ -139,6 +178,9 @@ public class XBRL implements Serializable {
 	 * @return
 	 */
 	public PresentationAPI getPresentationAPI() {
+		if (linkbasesPending) {
+			loadLinkbases();
+		}
 		if (this.presentationAPI == null) {
 			this.presentationAPI = new PresentationAPI(this);
 		}
@@ -154,12 +196,50 @@ public class XBRL implements Serializable {
 		return index;
 	}
 
+	/**
+	 * Provides access to the registry of all facts
+	 * 
+	 * @return
+	 */
+	public FactStore getFactStore() {
+		return factStore;
+	}
+
+	protected Fact createRoot() {
+		Fact result = new Fact(this, Type.ROOT, 0, 0);
+		factStore.setRoot(result);
+		return result;
+	}
+
+	public boolean isColumnarStorage() {
+		return columnarStorage;
+	}
+
+	/**
+	 * Stores the facts in columns instead of individual objects with their own
+	 * maps and lists. This reduces the memory usage considerably. The storage can
+	 * only be changed before anything has been loaded.
+	 * 
+	 * @param columnarStorage
+	 */
+	public void setColumnarStorage(boolean columnarStorage) {
+		if (this.columnarStorage != columnarStorage) {
+			if (!this.isEmpty()) {
+				throw new IllegalStateException("The storage can only be changed before loading any data");
+			}
+			this.columnarStorage = columnarStorage;
+			this.factStore = new FactStore(columnarStorage);
+			this.root = createRoot();
+		}
+	}
+
 	/**
 	 * Loads a file or files in a directory
 	 * 
 	 * @param file
 	 */
 	public void load(File file) {
+		checkNotFrozen();
 		try {
 			setImportFileName(file.toString());
 			if (file.isDirectory()) {
@@ -204,8 +284,16 @@ public class XBRL implements Serializable {
 	 * @throws ParserConfigurationException
 	 */
 	public boolean load(URL url) throws SAXException, IOException, ParserConfigurationException {
+		checkNotFrozen();
+		boolean result = parse(url);
+		postProcessing();
+		return result;
+	}
+
+	protected boolean parse(URL url) throws SAXException, IOException, ParserConfigurationException {
 		boolean result = false;
 		setImportFileName(url.toString());
+		addFiling(this.lastFilingInfo);
 		if (url.getPath().endsWith(".zip")) {
 			result = loadZip(url);
 		} else {
@@ -216,10 +304,234 @@ public class XBRL implements Serializable {
 			}
 		}
 		resolve(url);
-		postProcessing();
 		return result;
 	}
 
+	/**
+	 * Loads multiple filings into this document. The filings are parsed in
+	 * parallel (see setFilingParallelism) into separate instances which are
+	 * merged in the sequence of the files as soon as they are available, so
+	 * that we keep at most filingParallelism parsed filings in memory. Each
+	 * filing keeps its own EdgarFiling information. Like with tryLoad the
+	 * filings which can not be loaded are only logged.
+	 * 
+	 * @param files
+	 */
+	public void load(Collection<File> files) {
+		checkNotFrozen();
+		List<File> list = files.stream().filter(f -> !loadedURLs.contains(toURL(f))).collect(Collectors.toList());
+		int parallelism = Math.max(1, filingParallelism);
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		Deque<Future<Shard>> inProcess = new ArrayDeque();
+		Iterator<File> it = list.iterator();
+		Collection<Exception> errors = new ArrayList();
+		try {
+			while (it.hasNext() || !inProcess.isEmpty()) {
+				while (it.hasNext() && inProcess.size() < parallelism) {
+					File file = it.next();
+					inProcess.add(executor.submit(() -> loadFiling(file)));
+				}
+				Shard shard = inProcess.poll().get();
+				if (shard.error != null) {
+					errors.add(shard.error);
+				} else {
+					mergeFiling(shard.xbrl);
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if (!errors.isEmpty()) {
+			LOG.error(errors);
+		}
+		if (this.lastFilingInfo != null) {
+			postProcessing();
+		}
+	}
+
+	private Shard loadFiling(File file) {
+		Shard result = new Shard();
+		result.xbrl = newShard();
+		result.xbrl.lastFilingInfo = null;
+		result.xbrl.lazyLinkbases = this.lazyLinkbases;
+		result.xbrl.snapshots = this.snapshots;
+		try {
+			LOG.info("Loading " + file);
+			result.xbrl.parse(toURL(file));
+			result.xbrl.setupForm();
+			// the context ids are only unique within a filing
+			result.xbrl.attachPendingContexts();
+		} catch (Exception ex) {
+			result.error = ex;
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the facts, the index and the filing information of a separately
+	 * loaded filing into this instance
+	 * 
+	 * @param shard
+	 */
+	protected void mergeFiling(XBRL shard) {
+		merge(shard);
+		loadedURLs.addAll(shard.loadedURLs);
+		synchronized (deferredLinkbases) {
+			deferredLinkbases.putAll(shard.deferredLinkbases);
+			linkbasesPending = !deferredLinkbases.isEmpty();
+		}
+		this.lastFilingInfo = shard.lastFilingInfo;
+		shard.filings.forEach(f -> addFiling(f));
+	}
+
+	private static URL toURL(File file) {
+		try {
+			return file.toURI().toURL();
+		} catch (MalformedURLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private void addFiling(EdgarFiling filing) {
+		if (filing != null && !filings.contains(filing)) {
+			filings.add(filing);
+		}
+	}
+
+	/**
+	 * Returns the information of all loaded filings in the sequence of the
+	 * loading
+	 * 
+	 * @return
+	 */
+	public List<EdgarFiling> getFilings() {
+		return Collections.unmodifiableList(filings);
+	}
+
+	/**
+	 * Returns the values of the indicated filing
+	 * 
+	 * @param filing
+	 * @return
+	 */
+	public List<FactValue> findValues(EdgarFiling filing) {
+		return this.findValues().stream().filter(v -> v.getFilingInfo() == filing).collect(Collectors.toList());
+	}
+
+	/**
+	 * Parses the filing in streaming mode: the numeric values are resolved and
+	 * passed as FactRecords to the consumer. We keep only the contexts, units,
+	 * labels and the document information (dei) in memory. The html nodes and
+	 * all other values are discarded, so the memory does not grow with the
+	 * size of the text blocks.
+	 * 
+	 * @param file
+	 * @param consumer
+	 * @return number of records
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	public long stream(File file, Consumer<FactRecord> consumer)
+			throws IOException, ParserConfigurationException, SAXException {
+		setImportFileName(file.toString());
+		return stream(file, file.getName(), consumer);
+	}
+
+	/**
+	 * Parses the filing from the URL in streaming mode. Remote files are
+	 * downloaded to a temporary file first.
+	 * 
+	 * @param url
+	 * @param consumer
+	 * @return number of records
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	public long stream(URL url, Consumer<FactRecord> consumer)
+			throws IOException, ParserConfigurationException, SAXException {
+		setImportFileName(url.toString());
+		String name = getImportFileName(url.getPath());
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return stream(new File(url.toURI()), name, consumer);
+			} catch (URISyntaxException ex) {
+				throw new IOException(ex);
+			}
+		}
+		File tmp = File.createTempFile("edgar", "-" + name);
+		try {
+			try (InputStream is = url.openStream()) {
+				Files.copy(is, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return stream(tmp, name, consumer);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	protected long stream(File file, String name, Consumer<FactRecord> consumer)
+			throws IOException, ParserConfigurationException, SAXException {
+		this.factStream = new FactStream(this, consumer);
+		try {
+			if (name.endsWith(".zip")) {
+				streamZip(file);
+			} else {
+				load1(file.toURI().toURL(), true);
+			}
+			postProcessing();
+			factStream.flush();
+			return factStream.getCount();
+		} finally {
+			this.factStream = null;
+		}
+	}
+
+	/**
+	 * We load the label linkbases first so that the labels are available when
+	 * the values are emitted. The other linkbases and the schema are not
+	 * needed.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	protected void streamZip(File file) throws IOException, ParserConfigurationException, SAXException {
+		try (ZipFile zipFile = new ZipFile(file)) {
+			List<ZipEntry> entries = Collections.list(zipFile.entries()).stream()
+					.filter(ze -> isLabelFile(ze.getName()) || isFactFile(ze.getName()))
+					.sorted(Comparator.comparing(ze -> isLabelFile(ze.getName()) ? 0 : 1))
+					.collect(Collectors.toList());
+			for (ZipEntry ze : entries) {
+				try (InputStream is = zipFile.getInputStream(ze)) {
+					loadZipEntry(is, ze.getName());
+				}
+			}
+		}
+	}
+
+	protected boolean isLabelFile(String name) {
+		return name.endsWith("_lab.xml");
+	}
+
+	/**
+	 * Returns the active FactStream if we are parsing in streaming mode.
+	 * Otherwise we return null
+	 * 
+	 * @return
+	 */
+	public FactStream getFactStream() {
+		return factStream;
+	}
+
 	/**
 	 * We support the import of multiple files. Here we allocate a new FilingInfo
 	 * for each filing
@@ -255,6 +567,13 @@ public class XBRL implements Serializable {
 	 * After the import we define the form and company number
 	 */
 	protected void postProcessing() {
+		attachPendingContexts();
+		// the contexts and labels are resolved again with the complete data
+		clearContexts();
+		if (labelAPI != null) {
+			labelAPI.clear();
+		}
+
 		// Setup Company Number
 		if (Utils.isEmpty(this.getCompanyNumber())) {
 			Iterator<Fact> it = this.find("EntityCentralIndexKey", Arrays.asList(Type.value)).iterator();
@@ -272,7 +591,17 @@ public class XBRL implements Serializable {
 			}
 		}
 
-		// Determine document type
+		setupForm();
+		// setup company info
+		this.getCompanyInfo();
+
+		this.setPostProcessingDone(true);
+	}
+
+	/**
+	 * Determine document type
+	 */
+	protected void setupForm() {
 		// Last resort to set the form name. 1.st We try to get the form name from the
 		// file name.
 		// 2nd. we try to set it in the parser.
@@ -283,10 +612,26 @@ public class XBRL implements Serializable {
 				this.getFilingInfo().setForm(form);
 			}
 		}
-		// setup company info
-		this.getCompanyInfo();
+	}
 
-		this.setPostProcessingDone(true);
+	/**
+	 * Adds the contexts which were kept back by the parsers (see FactFilter) if
+	 * they are used by a value
+	 */
+	protected void attachPendingContexts() {
+		if (!pendingContexts.isEmpty()) {
+			Set<String> used = new HashSet();
+			for (Fact value : find(Type.value)) {
+				used.add(value.getAttribute(Attribute.contextRef));
+			}
+			for (Fact context : pendingContexts.values()) {
+				if (used.contains(context.getAttribute(Attribute.id))) {
+					attach(context, root);
+				}
+			}
+			LOG.info("Contexts used: " + used.size() + " of " + pendingContexts.size());
+			pendingContexts.clear();
+		}
 	}
 
 	protected boolean loadFile(URL url) throws SAXException, IOException, ParserConfigurationException {
@@ -297,49 +642,450 @@ public class XBRL implements Serializable {
 	protected boolean loadZip(URL url) throws IOException, ParserConfigurationException, SAXException {
 		boolean result = false;
 		if (!loadedURLs.contains(url)) {
+			if (isSnapshotSupported(url)) {
+				merge(loadSnapshot(url));
+			} else {
+				parseZip(url);
+			}
+			loadedURLs.add(url);
+			result = true;
+		}
+		return result;
+	}
+
+	protected void parseZip(URL url) throws IOException, ParserConfigurationException, SAXException {
+		if (parallelLoading && "file".equals(url.getProtocol())) {
+			loadZipParallel(url);
+		} else {
 			ZipInputStream zis = new ZipInputStream(url.openStream());
 			ZipEntry ze = zis.getNextEntry();
 			while (ze != null) {
-				String name = ze.getName();
-				LOG.info(" -> " + name);
-				if (name.endsWith("xml") || name.endsWith("xsd")) {
-					load1(zis, isFactFile(name), true);
-				} else if (name.endsWith("htm") || name.endsWith("html")) {
-					// we use a try catch block to handle the case where we have xmls and
-					// additional html exhibits
-					try {
-						loadiXbrl(zis, name);
-					} catch (Exception ex) {
-						LOG.error("Could not load " + name + " " + ex);
-					}
-				} else {
-					LOG.info("The following file was ignored " + name);
+				if (!deferLinkbase(url, ze.getName())) {
+					loadZipEntry(zis, ze.getName());
 				}
-
 				ze = zis.getNextEntry();
 			}
-
 			zis.closeEntry();
 			zis.close();
-			loadedURLs.add(url);
-			result = true;
+		}
+	}
+
+	/**
+	 * Snapshots are only used for local zip files. The result of a FactFilter
+	 * depends on the selection, so we do not use snapshots in this case.
+	 * 
+	 * @param url
+	 * @return
+	 */
+	protected boolean isSnapshotSupported(URL url) {
+		return snapshots && factFilter == null && "file".equals(url.getProtocol());
+	}
+
+	/**
+	 * Restores the filing from the binary snapshot which is stored next to the
+	 * zip file. If the snapshot is missing or stale we parse the zip file and
+	 * write a new snapshot.
+	 * 
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	protected XBRL loadSnapshot(URL url) throws IOException, ParserConfigurationException, SAXException {
+		File zipFile;
+		try {
+			zipFile = new File(url.toURI());
+		} catch (URISyntaxException ex) {
+			throw new IOException(ex);
+		}
+		File snapshotFile = XBRLSnapshot.getSnapshotFile(zipFile);
+		XBRL shard = newShard();
+		if (!XBRLSnapshot.read(shard, zipFile, snapshotFile)) {
+			shard = newShard();
+			// the snapshot contains all documents of the filing
+			shard.lazyLinkbases = false;
+			shard.parallelLoading = this.parallelLoading;
+			shard.parseZip(url);
+			XBRLSnapshot.write(shard, zipFile, snapshotFile);
+		}
+		return shard;
+	}
+
+	protected void loadZipEntry(InputStream is, String name)
+			throws IOException, ParserConfigurationException, SAXException {
+		LOG.info(" -> " + name);
+		if (name.endsWith("xml") || name.endsWith("xsd")) {
+			load1(is, isFactFile(name), true);
+		} else if (name.endsWith("htm") || name.endsWith("html")) {
+			// we use a try catch block to handle the case where we have xmls and
+			// additional html exhibits
+			try {
+				loadiXbrl(is, name);
+			} catch (Exception ex) {
+				LOG.error("Could not load " + name + " " + ex);
+			}
+		} else {
+			LOG.info("The following file was ignored " + name);
+		}
+	}
+
+	/**
+	 * Each entry of the zip file is parsed in parallel into a separate XBRL
+	 * instance. The results are merged in the sequence of the entries, so we get
+	 * the same result as with the sequential processing.
+	 * 
+	 * @param url
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	protected void loadZipParallel(URL url) throws IOException, ParserConfigurationException, SAXException {
+		File file;
+		try {
+			file = new File(url.toURI());
+		} catch (URISyntaxException ex) {
+			throw new IOException(ex);
+		}
+		try (ZipFile zipFile = new ZipFile(file)) {
+			List<ZipEntry> entries = Collections.list(zipFile.entries()).stream()
+					.filter(ze -> !deferLinkbase(url, ze.getName())).collect(Collectors.toList());
+			List<Shard> shards = entries.parallelStream().map(ze -> loadShard(zipFile, ze))
+					.collect(Collectors.toList());
+			for (Shard shard : shards) {
+				if (shard.error != null) {
+					rethrow(shard.error);
+				}
+				merge(shard.xbrl);
+			}
+		}
+	}
+
+	private Shard loadShard(ZipFile zipFile, ZipEntry ze) {
+		Shard result = new Shard();
+		result.xbrl = newShard();
+		try (InputStream is = zipFile.getInputStream(ze)) {
+			result.xbrl.loadZipEntry(is, ze.getName());
+		} catch (Exception ex) {
+			result.error = ex;
 		}
 		return result;
 	}
 
-	protected void loadiXbrl(ZipInputStream zis, String name)
+	private void rethrow(Exception ex) throws IOException, ParserConfigurationException, SAXException {
+		if (ex instanceof IOException) {
+			throw (IOException) ex;
+		} else if (ex instanceof ParserConfigurationException) {
+			throw (ParserConfigurationException) ex;
+		} else if (ex instanceof SAXException) {
+			throw (SAXException) ex;
+		}
+		throw new RuntimeException(ex);
+	}
+
+	/**
+	 * Creates an empty XBRL instance with the same settings which is used to
+	 * parse an individual document
+	 * 
+	 * @return
+	 */
+	protected XBRL newShard() {
+		XBRL result = new XBRL();
+		result.setColumnarStorage(this.columnarStorage);
+		result.formatters = this.formatters;
+		result.maxFieldSize = this.maxFieldSize;
+		result.lastFilingInfo = this.lastFilingInfo;
+		result.factFilter = this.factFilter;
+		result.stringPool = this.getStringPool();
+		result.skipHtml = this.skipHtml;
+		result.autoScale = this.autoScale;
+		return result;
+	}
+
+	/**
+	 * Moves the facts and the index entries of a separately parsed document into
+	 * this instance
+	 * 
+	 * @param shard
+	 */
+	protected void merge(XBRL shard) {
+		int offset = factStore.size() - 1;
+		factStore.merge(shard.factStore, this, root);
+		index.merge(shard.index, offset, factStore);
+		pendingContexts.putAll(shard.pendingContexts);
+		continuations.putAll(shard.continuations);
+		shard.continuations.clear();
+	}
+
+	/**
+	 * Defines the selection of the values which is applied while parsing. Only
+	 * the selected values and the contexts which are used by them are kept.
+	 * 
+	 * @param factFilter
+	 */
+	public void setFactFilter(FactFilter factFilter) {
+		this.factFilter = factFilter;
+	}
+
+	public FactFilter getFactFilter() {
+		return factFilter;
+	}
+
+	/**
+	 * Pool which is used to share the repeated attribute names and values of
+	 * the facts
+	 * 
+	 * @return
+	 */
+	public StringPool getStringPool() {
+		if (stringPool == null) {
+			stringPool = sharedStringPool ? StringPool.getShared() : new StringPool();
+		}
+		return stringPool;
+	}
+
+	public void setStringPool(StringPool stringPool) {
+		this.stringPool = stringPool;
+	}
+
+	public boolean isSharedStringPool() {
+		return sharedStringPool;
+	}
+
+	/**
+	 * If true we use the (weak) string pool which is shared by all XBRL
+	 * documents. Otherwise each document has its own pool.
+	 * 
+	 * @param sharedStringPool
+	 */
+	public void setSharedStringPool(boolean sharedStringPool) {
+		this.sharedStringPool = sharedStringPool;
+		this.stringPool = null;
+	}
+
+	/**
+	 * The parsers keep back the contexts if a FactFilter is defined. They are
+	 * added in the post processing if they are used by a value.
+	 * 
+	 * @param context
+	 *            parsed context node which is not registered in this XBRL
+	 */
+	public void addPendingContext(Fact context) {
+		pendingContexts.put(context.getAttribute(Attribute.id), context);
+	}
+
+	/**
+	 * Returns the context with the indicated id which has not been added yet
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public Fact getPendingContext(String id) {
+		return id == null ? null : pendingContexts.get(id);
+	}
+
+	/**
+	 * Registers a continuation of an iXBRL text by its id, so that the
+	 * continuedAt chains can be resolved w/o searching the index
+	 * 
+	 * @param continuation
+	 */
+	public void addContinuation(Fact continuation) {
+		String id = continuation.getAttribute(Attribute.id);
+		if (!Utils.isEmpty(id)) {
+			continuations.put(id, continuation);
+		}
+	}
+
+	/**
+	 * Returns the continuation with the indicated id. If it does not exist we
+	 * return null
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public Fact getContinuation(String id) {
+		return id == null ? null : continuations.get(id);
+	}
+
+	/**
+	 * Registers a copy of a node which was parsed without XBRL (and of all its
+	 * children) and adds it to the parent
+	 * 
+	 * @param detached
+	 * @param parent
+	 * @return
+	 */
+	public Fact attach(Fact detached, Fact parent) {
+		Type type = detached.getType();
+		long line = detached.getLine();
+		Fact result = type == Type.value ? new FactValue(this, type, detached.getLevel(), line)
+				: new Fact(this, type, detached.getLevel(), line);
+		for (Entry<String, String> e : detached.getAttributes().entrySet()) {
+			result.put(e.getKey(), e.getValue());
+		}
+		parent.addChild(result);
+		result.addParent(parent);
+		if (type == Type.continuation) {
+			addContinuation(result);
+		}
+		// nodes with content are indexed with their type
+		if (detached.getAttribute(Attribute.value) != null || detached.getAttribute(type.name()) != null) {
+			result.index();
+		}
+		for (Fact child : detached.getChildren()) {
+			attach(child, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Records the schema and linkbase entries of a local zip file so that they
+	 * can be parsed when they are needed
+	 * 
+	 * @param url
+	 * @param name
+	 * @return true if the entry has been deferred
+	 */
+	protected boolean deferLinkbase(URL url, String name) {
+		if (lazyLinkbases && "file".equals(url.getProtocol()) && isLinkbaseFile(name)) {
+			synchronized (deferredLinkbases) {
+				deferredLinkbases.computeIfAbsent(url, u -> new ArrayList()).add(name);
+				linkbasesPending = true;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	protected boolean isLinkbaseFile(String name) {
+		return !isFactFile(name) && (name.endsWith("xml") || name.endsWith("xsd"));
+	}
+
+	/**
+	 * Parses all deferred schema and linkbase entries. This is done
+	 * automatically by getLabelAPI() and getPresentationAPI(). It is only
+	 * needed if you want to access the linkbase facts directly (e.g. with
+	 * find(Type.calculationLink)).
+	 */
+	public void loadLinkbases() {
+		loadLinkbases(name -> true);
+	}
+
+	protected void loadLinkbases(Predicate<String> filter) {
+		synchronized (deferredLinkbases) {
+			boolean loaded = false;
+			for (Map.Entry<URL, List<String>> e : deferredLinkbases.entrySet()) {
+				List<String> names = e.getValue().stream().filter(filter).collect(Collectors.toList());
+				if (!names.isEmpty()) {
+					e.getValue().removeAll(names);
+					loadZipEntries(e.getKey(), names);
+					loaded = true;
+				}
+			}
+			deferredLinkbases.values().removeIf(names -> names.isEmpty());
+			linkbasesPending = !deferredLinkbases.isEmpty();
+			if (loaded && labelAPI != null) {
+				labelAPI.clear();
+			}
+		}
+	}
+
+	private void loadZipEntries(URL url, List<String> names) {
+		try (ZipFile zipFile = new ZipFile(new File(url.toURI()))) {
+			for (String name : names) {
+				try (InputStream is = zipFile.getInputStream(zipFile.getEntry(name))) {
+					loadZipEntry(is, name);
+				}
+			}
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	public boolean isLazyLinkbases() {
+		return lazyLinkbases;
+	}
+
+	/**
+	 * Parses only the instance documents of a local zip file. The schema and the
+	 * linkbases (labels, presentation, calculation, definition) are parsed when
+	 * they are used for the first time.
+	 * 
+	 * @param lazyLinkbases
+	 */
+	public void setLazyLinkbases(boolean lazyLinkbases) {
+		this.lazyLinkbases = lazyLinkbases;
+	}
+
+	public boolean isSkipHtml() {
+		return skipHtml;
+	}
+
+	/**
+	 * If true the html nodes of iXBRL documents are only kept if they provide
+	 * the text of a value, continuation or footnote. All other html nodes are
+	 * skipped and can not be found.
+	 * 
+	 * @param skipHtml
+	 */
+	public void setSkipHtml(boolean skipHtml) {
+		this.skipHtml = skipHtml;
+	}
+
+	public boolean isSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * If true the parsed facts of a local zip file are stored in a binary
+	 * snapshot next to the zip file (see XBRLSnapshot). The next load of the
+	 * filing restores the facts from the snapshot w/o parsing the zip file.
+	 * 
+	 * @param snapshots
+	 */
+	public void setSnapshots(boolean snapshots) {
+		this.snapshots = snapshots;
+	}
+
+	public int getFilingParallelism() {
+		return filingParallelism;
+	}
+
+	/**
+	 * Defines the number of filings which are parsed in parallel by
+	 * load(Collection)
+	 * 
+	 * @param filingParallelism
+	 */
+	public void setFilingParallelism(int filingParallelism) {
+		this.filingParallelism = filingParallelism;
+	}
+
+	public boolean isParallelLoading() {
+		return parallelLoading;
+	}
+
+	/**
+	 * Parses the documents of a zip file in parallel. This is only supported for
+	 * local files.
+	 * 
+	 * @param parallelLoading
+	 */
+	public void setParallelLoading(boolean parallelLoading) {
+		this.parallelLoading = parallelLoading;
+	}
+
+	protected void loadiXbrl(InputStream zis, String name)
 			throws IOException, ParserConfigurationException, SAXException {
-		// make the input stream re-readable and get the first line
-		BufferedInputStream is = new BufferedInputStream(zis);
-		is.mark(10000000);
-		BufferedReader r = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-		String firstLine = r.readLine();
+		// we only look at the start of the document and parse it directly from the
+		// stream
+		DocumentSniffer sniffer = new DocumentSniffer(zis);
 		// We process only xml documents
-		if (firstLine.toLowerCase().startsWith("<?xml")) {
-			is.reset();
-			load1(is, isFactFile(name), false);
+		if (sniffer.isXML()) {
+			load1(sniffer.getInputStream(), isFactFile(name), false);
 		} else {
-			LOG.info("    " + name + " -> ignored because it is not a avalid iXBRL document: " + firstLine);
+			LOG.info("    " + name + " -> ignored because it is not a avalid iXBRL document: " + sniffer.getStart());
 		}
 	}
 
@@ -384,17 +1130,50 @@ public class XBRL implements Serializable {
 	protected void load1(InputStream is, boolean fact, boolean xml)
 			throws ParserConfigurationException, IOException, SAXException {
 		InputStream wis = new WontCloseBufferedInputStream(is);
-
-		SAXParserFactory factory = SAXParserFactory.newInstance();
-		factory.setNamespaceAware(true);
-		factory.setXIncludeAware(true);
-		factory.setValidating(false);
-		factory.setFeature("http://apache.org/xml/features/honour-all-schemaLocations", true);
-		factory.setFeature("http://apache.org/xml/features/continue-after-fatal-error", true);
-		SAXParser saxParser = factory.newSAXParser();
-		DefaultHandler h = xml ? new SaxXmlDocumentHandler(this, root, fact)
-				: new SaxHtmlDocumentHandler(this, root, fact);
+		SAXParserPool pool = SAXParserPool.getInstance();
+		SAXParser saxParser = pool.borrow();
+		DefaultHandler h = xml ? getXmlHandler(fact) : getHtmlHandler(fact);
 		saxParser.parse(wis, h);
+		// parsers which failed are not returned to the pool
+		pool.release(saxParser);
+	}
+
+	protected DefaultHandler getXmlHandler(boolean fact) {
+		if (!reuseHandlers) {
+			return new SaxXmlDocumentHandler(this, root, fact);
+		}
+		if (xmlHandler == null) {
+			xmlHandler = new SaxXmlDocumentHandler(this, root, fact);
+		} else {
+			xmlHandler.setup(this, root, fact);
+		}
+		return xmlHandler;
+	}
+
+	protected DefaultHandler getHtmlHandler(boolean fact) {
+		if (!reuseHandlers) {
+			return new SaxHtmlDocumentHandler(this, root, fact);
+		}
+		if (htmlHandler == null) {
+			htmlHandler = new SaxHtmlDocumentHandler(this, root, fact);
+		} else {
+			htmlHandler.setup(this, root, fact);
+		}
+		return htmlHandler;
+	}
+
+	public boolean isReuseHandlers() {
+		return reuseHandlers;
+	}
+
+	/**
+	 * Reuses the SAX document handlers for all documents which are loaded by
+	 * this instance instead of creating new handlers for each document
+	 * 
+	 * @param reuseHandlers
+	 */
+	public void setReuseHandlers(boolean reuseHandlers) {
+		this.reuseHandlers = reuseHandlers;
 	}
 
 	protected boolean resolveReferences(URL url) throws SAXException, IOException, ParserConfigurationException {
@@ -485,17 +1264,7 @@ public class XBRL implements Serializable {
 	 * @return
 	 */
 	public Collection<Fact> find(Collection<String> values, Collection<Type> types) {
-		Collection<Fact> result = null;
-		for (String value : values) {
-			if (!value.isEmpty()) {
-				if (result == null) {
-					result = index.find(value, types);
-				} else {
-					result.retainAll(index.find(value, types));
-				}
-			}
-		}
-		return result;
+		return index.find(values, types);
 	}
 
 	/**
@@ -514,7 +1283,7 @@ public class XBRL implements Serializable {
 	 * @return
 	 */
 	public List<Fact> find() {
-		return root.getFacts();
+		return factStore.find();
 	}
 
 	/**
@@ -552,6 +1321,9 @@ public class XBRL implements Serializable {
 	 * @return
 	 */
 	public List<FactValue> getCombinedTextValues() {
+		if (frozen && combinedTextValues != null) {
+			return new ArrayList(combinedTextValues);
+		}
 		Map<String, List<FactValue>> facts = this.findValues().stream().filter(f -> f.getDataType() == DataType.string)
 				.filter(f -> f.getContext().getSegments().isEmpty()).filter(f -> !Utils.isEmpty(f.getValue()))
 				.collect(Collectors.groupingBy(FactValue::getDate));
@@ -561,13 +1333,14 @@ public class XBRL implements Serializable {
 	}
 
 	/**
-	 * Combined all texts
+	 * Combined all texts. The result is not part of the document, so it is not
+	 * registered in the FactStore.
 	 * 
 	 * @param entry
 	 * @return
 	 */
 	protected FactValue toFactValue(Entry<String, List<FactValue>> entry) {
-		FactValue value = new FactValue(this, Type.typedMember.value, 0, 0);
+		FactValue value = new FactValue(this, Type.typedMember.value, 0, 0, false);
 		value.put("date", entry.getKey());
 		value.getAttributes().entrySet().stream()
 				.filter(e -> e.getKey().matches(
@@ -623,7 +1396,19 @@ public class XBRL implements Serializable {
 	 * @return
 	 */
 	public List<Fact> find(Collection<Type> types) {
-		return root.getFacts(types, true, 0, Integer.MAX_VALUE);
+		return factStore.find(types);
+	}
+
+	/**
+	 * Finds the child facts of the indicated types within the level range
+	 * 
+	 * @param types
+	 * @param fromLevel
+	 * @param toLevel
+	 * @return
+	 */
+	public List<Fact> find(Collection<Type> types, int fromLevel, int toLevel) {
+		return factStore.find(types, fromLevel, toLevel);
 	}
 
 	/**
@@ -700,6 +1485,37 @@ public class XBRL implements Serializable {
 		this.index = index;
 	}
 
+	/**
+	 * Returns the shared context for the indicated context id. The context
+	 * information is determined only once per id.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public Context getContextByID(String id) {
+		Map<String, Context> map = contexts;
+		if (frozen && map != null) {
+			// the contexts of a frozen document are only read
+			Context result = map.get(id);
+			return result != null ? result : new Context(this, id);
+		}
+		synchronized (this) {
+			if (contexts == null) {
+				contexts = new HashMap();
+			}
+			Context result = contexts.get(id);
+			if (result == null) {
+				result = new Context(this, id);
+				contexts.put(id, result);
+			}
+			return result;
+		}
+	}
+
+	protected synchronized void clearContexts() {
+		this.contexts = null;
+	}
+
 	/**
 	 * Provides the value elements as csv
 	 * 
@@ -746,7 +1562,7 @@ public class XBRL implements Serializable {
 	public List<Context> getContext(SegmentScope scope) {
 		List<Context> result = new ArrayList();
 		for (Fact ctxFact : this.find(Arrays.asList(Type.context))) {
-			Context ctx = new Context(this, ctxFact.getAttribute(Attribute.id));
+			Context ctx = getContextByID(ctxFact.getAttribute(Attribute.id));
 			switch (scope) {
 			case WithSegments:
 				if (ctx.isWithSegments()) {
@@ -775,7 +1591,7 @@ public class XBRL implements Serializable {
 	public List<Context> getContext(String dimension) {
 		List<Context> result = new ArrayList();
 		for (Fact ctxFact : this.find(Arrays.asList(Type.context))) {
-			Context ctx = new Context(this, ctxFact.getAttribute(Attribute.id));
+			Context ctx = getContextByID(ctxFact.getAttribute(Attribute.id));
 			for (Segment segment : ctx.getSegments()) {
 				if (segment.getDimension().equals(dimension)) {
 					result.add(ctx);
@@ -793,7 +1609,7 @@ public class XBRL implements Serializable {
 	public Collection<String> getDimensions() {
 		Set<String> result = new HashSet();
 		for (Fact ctxFact : this.find(Arrays.asList(Type.context))) {
-			Context ctx = new Context(this, ctxFact.getAttribute(Attribute.id));
+			Context ctx = getContextByID(ctxFact.getAttribute(Attribute.id));
 			for (Segment segment : ctx.getSegments()) {
 				String dimension = segment.getDimension();
 				if (!Utils.isEmpty(dimension)) {
@@ -854,9 +1670,10 @@ public class XBRL implements Serializable {
 	public ITableEx<Value> toTable(Predicate<FactValue> p) {
 		ValueTable table = new ValueTable("value", "parameterName", Arrays.asList("prefix", "label", "uri", "dateLabel",
 				"contextRef", "decimals", "segment", "segmentDimension", "file", "id"));
-		List<Map<String, String>> records = this.findValues().stream().filter(a -> p.test(a))
-				.map(a -> a.getAttributes()).collect(Collectors.toList());
-		table.addValues(records);
+		List<FactValue> values = this.findValues().stream().filter(a -> p.test(a)).collect(Collectors.toList());
+		// numbers are taken from the parsed value
+		table.addValues(values, a -> a.getAttributes(),
+				a -> a.getNumber() != null ? new Value(a.getDoubleValue()) : new Value(a.getValue()));
 		return table;
 	}
 
@@ -904,13 +1721,99 @@ public class XBRL implements Serializable {
 		return false;
 	}
 
+	/**
+	 * Determines all lazily calculated information (linkbases, labels,
+	 * presentation, contexts, the exploded fact lists and the calculated value
+	 * attributes) so that the document is not changed any more by the read
+	 * access. A frozen document can be shared by multiple threads w/o any
+	 * locking. Any further loading is rejected.
+	 * 
+	 * @return
+	 */
+	public synchronized XBRL freeze() {
+		if (!frozen) {
+			if (!postProcessingDone && !isEmpty()) {
+				postProcessing();
+			}
+			loadLinkbases();
+			LabelAPI labels = getLabelAPI();
+			labels.freeze();
+			for (Fact unit : find(Type.unit)) {
+				labels.getUOMLabel(unit.getAttribute(Attribute.id));
+				unit.freezeFacts();
+			}
+			for (Fact ctx : find(Type.context)) {
+				getContextByID(ctx.getAttribute(Attribute.id));
+				ctx.freezeFacts();
+			}
+			List<FactValue> values = findValues();
+			for (FactValue value : values) {
+				value.freeze();
+			}
+			if (!values.isEmpty()) {
+				getValueAttributes();
+			}
+			getPresentationAPI().freeze();
+			for (Fact presentationLink : find(Type.presentationLink)) {
+				presentationLink.freezeFacts();
+			}
+			root.freezeFacts();
+			combinedTextValues = Collections.unmodifiableList(getCombinedTextValues());
+			frozen = true;
+		}
+		return this;
+	}
+
+	/**
+	 * The information which is determined by freeze() is not serialized: a
+	 * frozen document (e.g. from a spooled cache) is frozen again when it is
+	 * read.
+	 * 
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (frozen) {
+			frozen = false;
+			freeze();
+		}
+	}
+
+	/**
+	 * Returns true if the document has been frozen (see freeze())
+	 * 
+	 * @return
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("The XBRL is frozen and can not be changed");
+		}
+	}
+
 	/**
 	 * Closes all related collectioins
 	 */
 	public void close() {
 		this.index.clear();
 		this.root.clear();
+		this.factStore.clear();
+		this.factStore = new FactStore(columnarStorage);
+		this.root = createRoot();
 		this.loadedURLs.clear();
+		this.filings.clear();
+		synchronized (deferredLinkbases) {
+			this.deferredLinkbases.clear();
+			this.linkbasesPending = false;
+		}
+		this.pendingContexts.clear();
+		this.continuations.clear();
+		this.stringPool = null;
 
 		if (this.labelAPI != null) {
 			this.labelAPI.close();
@@ -925,7 +1828,20 @@ public class XBRL implements Serializable {
 			this.valueAttributes = null;
 		}
 		this.companyInfo = null;
+		this.clearContexts();
+		this.combinedTextValues = null;
+		this.frozen = false;
+		this.xmlHandler = null;
+		this.htmlHandler = null;
+
+	}
 
+	/**
+	 * Result of the parsing of an individual zip entry
+	 */
+	private static class Shard {
+		XBRL xbrl;
+		Exception error;
 	}
 
 }
@@ -0,0 +1,343 @@
+package ch.pschatzmann.edgar.base;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ch.pschatzmann.edgar.base.Fact.DataType;
+import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.utils.IntList;
+import ch.pschatzmann.edgar.utils.Utils;
+
+/**
+ * Binary snapshot of a parsed filing which is stored next to the zip file
+ * (e.g. 1234-10-K-20180101.xbrlbin). It contains the string table, the facts
+ * with their attributes and tree relationships and the posting lists of the
+ * index, so a filing can be restored w/o parsing it again.
+ *
+ * The snapshot is only valid for the zip file (length and modification date)
+ * and the parser settings (formatters, max field size, html handling) it was
+ * created with. Otherwise it is considered to be stale and the zip is parsed
+ * again.
+ *
+ * @author pschatzmann
+ *
+ */
+public class XBRLSnapshot {
+	private static final Logger LOG = Logger.getLogger(XBRLSnapshot.class);
+	public static final String EXTENSION = ".xbrlbin";
+	private static final int MAGIC = 0x58425242;
+	private static final int VERSION = 1;
+	private static final int NONE = -1;
+	private static final Type[] TYPES = Type.values();
+
+	/**
+	 * Returns the snapshot file for the indicated zip file
+	 *
+	 * @param zipFile
+	 * @return
+	 */
+	public static File getSnapshotFile(File zipFile) {
+		String name = zipFile.getName();
+		if (name.endsWith(".zip")) {
+			name = name.substring(0, name.length() - 4);
+		}
+		return new File(zipFile.getParentFile(), name + EXTENSION);
+	}
+
+	/**
+	 * Determines the parser settings which have an impact on the parsed facts
+	 *
+	 * @param xbrl
+	 * @return
+	 */
+	protected static String getSignature(XBRL xbrl) {
+		StringBuffer sb = new StringBuffer();
+		for (DataType type : DataType.values()) {
+			sb.append(xbrl.getValueFormatter(type).getClass().getName());
+			sb.append(";");
+		}
+		sb.append(xbrl.getMaxFieldSize());
+		sb.append(";");
+		sb.append(xbrl.isSkipHtml());
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the facts of a separately parsed filing to the snapshot file. The
+	 * file is written to a temporary file of its own first and then moved
+	 * atomically, so that a reader never sees an incomplete snapshot, even if
+	 * the same filing is loaded concurrently.
+	 *
+	 * @param xbrl
+	 * @param zipFile
+	 * @param snapshotFile
+	 * @return
+	 */
+	public static boolean write(XBRL xbrl, File zipFile, File snapshotFile) {
+		Path tmp = null;
+		try {
+			tmp = Files.createTempFile(snapshotFile.getAbsoluteFile().getParentFile().toPath(),
+					snapshotFile.getName(), ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp.toFile()), 1 << 16))) {
+				write(xbrl, zipFile, out);
+			}
+			try {
+				Files.move(tmp, snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmp, snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			LOG.info("Snapshot written: " + snapshotFile);
+			return true;
+		} catch (Exception ex) {
+			LOG.warn("Could not write snapshot " + snapshotFile + ": " + ex);
+			if (tmp != null) {
+				tmp.toFile().delete();
+			}
+			return false;
+		}
+	}
+
+	protected static void write(XBRL xbrl, File zipFile, DataOutputStream out) throws IOException {
+		FactStore store = xbrl.getFactStore();
+		Map<String, Integer> strings = new HashMap();
+		List<String> table = new ArrayList();
+
+		// encode the attributes and the index keys
+		int size = store.size();
+		int[][] attributes = new int[size][];
+		for (int id = 0; id < size; id++) {
+			Fact fact = store.get(id);
+			Map<String, String> map = fact.getAttributes();
+			int[] row = new int[map.size() * 2];
+			int pos = 0;
+			for (Map.Entry<String, String> e : map.entrySet()) {
+				row[pos++] = encode(e.getKey(), strings, table);
+				row[pos++] = encode(e.getValue(), strings, table);
+			}
+			attributes[id] = row;
+		}
+		Map<String, IntList> postingLists = xbrl.getIndex().getPostingLists();
+		for (String key : postingLists.keySet()) {
+			encode(key, strings, table);
+		}
+
+		// header
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(zipFile.length());
+		out.writeLong(zipFile.lastModified());
+		writeString(out, getSignature(xbrl));
+		writeString(out, xbrl.getFilingInfo() == null ? null : xbrl.getFilingInfo().getForm());
+
+		// string table
+		out.writeInt(table.size());
+		for (String str : table) {
+			writeString(out, str);
+		}
+
+		// facts
+		out.writeInt(size);
+		for (int id = 0; id < size; id++) {
+			Fact fact = store.get(id);
+			Type type = fact.getType();
+			out.writeInt(type == null ? NONE : type.ordinal());
+			out.writeInt(fact.getLevel());
+			out.writeLong(fact.getLine());
+			writeInts(out, attributes[id]);
+			writeIds(out, fact.getChildren());
+			writeIds(out, fact.getParents());
+		}
+
+		// facts which are reachable from the root in the sequence of the tree
+		IntList reachable = store.getReachableIds();
+		out.writeInt(reachable.size());
+		for (int j = 0; j < reachable.size(); j++) {
+			out.writeInt(reachable.get(j));
+		}
+
+		// index
+		out.writeInt(postingLists.size());
+		for (Map.Entry<String, IntList> e : postingLists.entrySet()) {
+			out.writeInt(strings.get(e.getKey()));
+			IntList ids = e.getValue();
+			out.writeInt(ids.size());
+			for (int j = 0; j < ids.size(); j++) {
+				out.writeInt(ids.get(j));
+			}
+		}
+	}
+
+	/**
+	 * Restores the facts from the snapshot file into an empty XBRL. Returns false
+	 * if the snapshot does not exist, is stale or can not be read.
+	 *
+	 * @param xbrl
+	 * @param zipFile
+	 * @param snapshotFile
+	 * @return
+	 */
+	public static boolean read(XBRL xbrl, File zipFile, File snapshotFile) {
+		if (!snapshotFile.isFile()) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (!isValid(buffer, xbrl, zipFile)) {
+				LOG.info("Snapshot is stale: " + snapshotFile);
+				return false;
+			}
+			read(xbrl, buffer);
+			LOG.info("Snapshot loaded: " + snapshotFile);
+			return true;
+		} catch (Exception ex) {
+			LOG.warn("Could not read snapshot " + snapshotFile + ": " + ex);
+			return false;
+		}
+	}
+
+	protected static boolean isValid(ByteBuffer buffer, XBRL xbrl, File zipFile) {
+		return buffer.remaining() > 24 && buffer.getInt() == MAGIC && buffer.getInt() == VERSION
+				&& buffer.getLong() == zipFile.length() && buffer.getLong() == zipFile.lastModified()
+				&& getSignature(xbrl).equals(readString(buffer));
+	}
+
+	protected static void read(XBRL xbrl, ByteBuffer buffer) {
+		String form = readString(buffer);
+		EdgarFiling filingInfo = xbrl.getFilingInfo();
+		if (form != null && filingInfo != null && Utils.isEmpty(filingInfo.getForm())) {
+			filingInfo.setForm(form);
+		}
+
+		String[] strings = new String[buffer.getInt()];
+		for (int j = 0; j < strings.length; j++) {
+			strings[j] = readString(buffer);
+		}
+
+		// the root is already available: all other facts get the same row id
+		FactStore store = xbrl.getFactStore();
+		int size = buffer.getInt();
+		int[][] children = new int[size][];
+		int[][] parents = new int[size][];
+		for (int id = 0; id < size; id++) {
+			int ordinal = buffer.getInt();
+			Type type = ordinal == NONE ? null : TYPES[ordinal];
+			int level = buffer.getInt();
+			long line = buffer.getLong();
+			Fact fact = id == 0 ? store.get(0)
+					: type == Type.value ? new FactValue(xbrl, type, level, line) : new Fact(xbrl, type, level, line);
+			int attributes = buffer.getInt();
+			for (int j = 0; j < attributes; j += 2) {
+				fact.restoreAttribute(decode(strings, buffer.getInt()), decode(strings, buffer.getInt()));
+			}
+			if (type == Type.continuation) {
+				xbrl.addContinuation(fact);
+			}
+			children[id] = readInts(buffer);
+			parents[id] = readInts(buffer);
+		}
+		for (int id = 0; id < size; id++) {
+			Fact fact = store.get(id);
+			for (int child : children[id]) {
+				fact.restoreChild(store.get(child));
+			}
+			for (int parent : parents[id]) {
+				fact.addParent(store.get(parent));
+			}
+		}
+
+		int reachable = buffer.getInt();
+		for (int j = 0; j < reachable; j++) {
+			store.setReachable(buffer.getInt());
+		}
+
+		IndexAPI index = xbrl.getIndex();
+		int entries = buffer.getInt();
+		for (int j = 0; j < entries; j++) {
+			String key = strings[buffer.getInt()];
+			int len = buffer.getInt();
+			IntList ids = new IntList(len);
+			for (int i = 0; i < len; i++) {
+				ids.add(buffer.getInt());
+			}
+			index.putPostingList(key, ids, store);
+		}
+	}
+
+	private static int encode(String str, Map<String, Integer> strings, List<String> table) {
+		if (str == null) {
+			return NONE;
+		}
+		Integer code = strings.get(str);
+		if (code == null) {
+			code = table.size();
+			strings.put(str, code);
+			table.add(str);
+		}
+		return code;
+	}
+
+	private static String decode(String[] strings, int code) {
+		return code == NONE ? null : strings[code];
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str == null) {
+			out.writeInt(NONE);
+		} else {
+			byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int len = buffer.getInt();
+		if (len == NONE) {
+			return null;
+		}
+		byte[] bytes = new byte[len];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	private static void writeIds(DataOutputStream out, List<Fact> facts) throws IOException {
+		out.writeInt(facts.size());
+		for (Fact fact : facts) {
+			out.writeInt(fact.getId());
+		}
+	}
+
+	private static int[] readInts(ByteBuffer buffer) {
+		int[] result = new int[buffer.getInt()];
+		for (int j = 0; j < result.length; j++) {
+			result[j] = buffer.getInt();
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,350 @@
+package ch.pschatzmann.edgar.dataload;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import ch.pschatzmann.edgar.utils.Utils;
+
+/**
+ * Bulk load for PostgreSQL: the records are streamed with COPY (in the csv
+ * format) into an unlogged staging table. After the indicated number of
+ * filings the staging table is merged into the target table with a single
+ * INSERT ... SELECT ... ON CONFLICT statement.
+ *
+ * The staging table must not be shared: loaders which are running in
+ * parallel (e.g. the writers of the DownloadPipeline) need to use their own
+ * staging table (see setStagingTableName).
+ *
+ * @author pschatzmann
+ *
+ */
+public class CopyLoader {
+	private static final Logger LOG = Logger.getLogger(CopyLoader.class);
+	private TableFactory tableFactory;
+	private String tableName;
+	private String stagingTableName;
+	private String constraint;
+	private List<String> attributes;
+	private int batchFilings = Integer.parseInt(Utils.getProperty("bulkLoadFilings", "20"));
+	private int bufferSize = 1 << 16;
+	private StringBuffer buffer = new StringBuffer();
+	private CopyIn copyIn;
+	private long stagedRecords;
+	private long filingRecords;
+	private int stagedFilings;
+	private LoadMetrics metrics = new LoadMetrics();
+	private boolean open;
+	private String mergeStatement;
+	private List<String> stagedFiles = new ArrayList();
+	private String currentFile;
+
+	/**
+	 * Constructor
+	 *
+	 * @param tableFactory
+	 * @param tableName
+	 * @param attributes
+	 * @param constraint
+	 */
+	public CopyLoader(TableFactory tableFactory, String tableName, List<String> attributes, String constraint) {
+		this.tableFactory = tableFactory;
+		this.tableName = tableName;
+		this.stagingTableName = tableName + "_staging";
+		this.attributes = attributes;
+		this.constraint = constraint;
+	}
+
+	/**
+	 * Creates the staging table and merges the records which were left over by
+	 * a previous load
+	 *
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	protected void open() throws SQLException, ClassNotFoundException {
+		if (!open) {
+			execute("CREATE UNLOGGED TABLE IF NOT EXISTS " + stagingTableName + " (LIKE " + tableName
+					+ " INCLUDING DEFAULTS)");
+			tableFactory.getConnection().commit();
+			open = true;
+			merge();
+		}
+	}
+
+	/**
+	 * Adds a record to the staging table. If the number is provided it is used
+	 * for the value field.
+	 *
+	 * @param record
+	 * @param number
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public void addRecord(Map<String, String> record, BigDecimal number) throws SQLException, ClassNotFoundException {
+		Object[] row = tableFactory.toRow(attributes, record, number);
+		if (row == null) {
+			metrics.addErrors(1);
+			return;
+		}
+		if (copyIn == null) {
+			open();
+			copyIn = getCopyIn();
+		}
+		for (int j = 0; j < row.length; j++) {
+			if (j > 0) {
+				buffer.append(',');
+			}
+			appendCsv(row[j]);
+		}
+		buffer.append('\n');
+		filingRecords++;
+		if (buffer.length() >= bufferSize) {
+			write();
+		}
+	}
+
+	/**
+	 * Completes the COPY of the current filing. The staging table is merged
+	 * after the indicated number of filings.
+	 *
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public void endFiling() throws SQLException, ClassNotFoundException {
+		endCopy();
+		currentFile = null;
+		if (stagedFilings >= batchFilings) {
+			merge();
+		}
+	}
+
+	/**
+	 * Completes the COPY of the indicated filing w/o merging. The file is passed
+	 * to the merge statement when the staged records are merged.
+	 *
+	 * @param file
+	 * @throws SQLException
+	 */
+	public void endCopy(String file) throws SQLException {
+		endCopy();
+		if (file != null) {
+			stagedFiles.add(file);
+			currentFile = file;
+		}
+	}
+
+	/**
+	 * Completes the COPY of the current filing w/o merging. While the COPY is
+	 * active no other statement can be executed on the connection.
+	 *
+	 * @throws SQLException
+	 */
+	public void endCopy() throws SQLException {
+		if (copyIn != null) {
+			long start = System.nanoTime();
+			try {
+				write();
+				copyIn.endCopy();
+			} finally {
+				copyIn = null;
+				metrics.addBatch(System.nanoTime() - start);
+			}
+			stagedRecords += filingRecords;
+			filingRecords = 0;
+			stagedFilings++;
+		}
+	}
+
+	/**
+	 * Moves the staged records into the target table. Existing records are
+	 * ignored.
+	 *
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public void merge() throws SQLException, ClassNotFoundException {
+		Connection connection = tableFactory.getConnection();
+		long start = System.nanoTime();
+		try {
+			String fields = String.join(", ", attributes);
+			StringBuffer sb = new StringBuffer();
+			sb.append("INSERT INTO ");
+			sb.append(tableName);
+			sb.append(" (");
+			sb.append(fields);
+			sb.append(") SELECT ");
+			sb.append(fields);
+			sb.append(" FROM ");
+			sb.append(stagingTableName);
+			sb.append(" ON CONFLICT ON CONSTRAINT ");
+			sb.append(constraint);
+			sb.append(" DO NOTHING");
+			long inserted;
+			try (Statement stmt = connection.createStatement()) {
+				inserted = stmt.executeUpdate(sb.toString());
+				stmt.executeUpdate("TRUNCATE " + stagingTableName);
+			}
+			if (mergeStatement != null && !stagedFiles.isEmpty()) {
+				try (PreparedStatement ps = connection.prepareStatement(mergeStatement)) {
+					for (String file : stagedFiles) {
+						ps.setString(1, file);
+						ps.addBatch();
+					}
+					ps.executeBatch();
+				}
+			}
+			connection.commit();
+			stagedFiles.clear();
+			metrics.addInserted(inserted);
+			metrics.addConflicts(Math.max(0, stagedRecords - inserted));
+			LOG.info("Merged " + stagedFilings + " filings into " + tableName + ": " + inserted + " records");
+		} catch (SQLException ex) {
+			connection.rollback();
+			metrics.addErrors(stagedRecords);
+			throw ex;
+		} finally {
+			metrics.addBatch(System.nanoTime() - start);
+			stagedRecords = 0;
+			stagedFilings = 0;
+		}
+	}
+
+	/**
+	 * Completes the current filing and merges all staged records
+	 *
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public void close() throws SQLException, ClassNotFoundException {
+		try {
+			endCopy();
+		} finally {
+			if (open) {
+				merge();
+			} else if (!stagedFiles.isEmpty()) {
+				// filings w/o records: open() creates the staging table and merges
+				open();
+			}
+		}
+	}
+
+	/**
+	 * Discards the records of the current filing
+	 */
+	public void cancel() {
+		if (currentFile != null) {
+			stagedFiles.remove(currentFile);
+			currentFile = null;
+		}
+		if (copyIn != null) {
+			try {
+				copyIn.cancelCopy();
+			} catch (SQLException ex) {
+				LOG.warn("Could not cancel the copy: " + ex);
+			}
+			copyIn = null;
+		}
+		buffer.setLength(0);
+		filingRecords = 0;
+	}
+
+	private CopyIn getCopyIn() throws SQLException, ClassNotFoundException {
+		PGConnection connection = tableFactory.getConnection().unwrap(PGConnection.class);
+		return connection.getCopyAPI().copyIn("COPY " + stagingTableName + " (" + String.join(", ", attributes)
+				+ ") FROM STDIN WITH (FORMAT csv)");
+	}
+
+	private void write() throws SQLException {
+		if (buffer.length() > 0) {
+			byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+			copyIn.writeToCopy(bytes, 0, bytes.length);
+			buffer.setLength(0);
+		}
+	}
+
+	/**
+	 * Null values are represented by an unquoted empty field, all other values
+	 * are quoted
+	 *
+	 * @param value
+	 */
+	private void appendCsv(Object value) {
+		if (value instanceof BigDecimal) {
+			buffer.append(((BigDecimal) value).toPlainString());
+		} else if (value != null) {
+			buffer.append('"');
+			buffer.append(value.toString().replace("\"", "\"\""));
+			buffer.append('"');
+		}
+	}
+
+	private void execute(String sql) throws SQLException, ClassNotFoundException {
+		try (Statement stmt = tableFactory.getConnection().createStatement()) {
+			stmt.executeUpdate(sql);
+		}
+	}
+
+	public String getStagingTableName() {
+		return stagingTableName;
+	}
+
+	/**
+	 * Defines the staging table (by default the name of the target table with
+	 * the suffix _staging)
+	 *
+	 * @param stagingTableName
+	 */
+	public void setStagingTableName(String stagingTableName) {
+		this.stagingTableName = stagingTableName;
+	}
+
+	public int getBatchFilings() {
+		return batchFilings;
+	}
+
+	/**
+	 * Defines the number of filings which are merged together into the target
+	 * table
+	 *
+	 * @param batchFilings
+	 */
+	public void setBatchFilings(int batchFilings) {
+		this.batchFilings = batchFilings;
+	}
+
+	public String getMergeStatement() {
+		return mergeStatement;
+	}
+
+	/**
+	 * Defines an additional SQL statement which is executed in the transaction
+	 * of the merge for each merged file (e.g. to update the status of the merged
+	 * filings). The file is passed as the only parameter.
+	 *
+	 * @param mergeStatement
+	 */
+	public void setMergeStatement(String mergeStatement) {
+		this.mergeStatement = mergeStatement;
+	}
+
+	/**
+	 * Provides the number of merged and existing records
+	 *
+	 * @return
+	 */
+	public LoadMetrics getMetrics() {
+		return metrics;
+	}
+
+}
@@ -0,0 +1,381 @@
+package ch.pschatzmann.edgar.dataload;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import ch.pschatzmann.edgar.base.XBRL;
+import ch.pschatzmann.edgar.dataload.rss.DataDownload;
+import ch.pschatzmann.edgar.dataload.rss.FeedInfoRecord;
+import ch.pschatzmann.edgar.dataload.rss.HttpDownloader;
+import ch.pschatzmann.edgar.utils.Utils;
+
+/**
+ * Processes the filings in 3 stages which are running in parallel: the
+ * download workers store the zip files in the destination folder, the parse
+ * workers load the XBRL documents and the writers save them (each writer with
+ * its own IFilingWriter and database connection).
+ *
+ * The stages are connected with bounded queues, so that a slow stage blocks
+ * the stages in front of it and we never keep more than the queue size of
+ * parsed documents in memory. A filing is saved by a writer in one
+ * transaction. The completed (saved or failed) filings are recorded in the
+ * sequence of the input, so that getCompleted() only reports the filings up
+ * to the first one which is still outstanding. The saved and failed filings
+ * are counted by the write stage.
+ *
+ * @author pschatzmann
+ *
+ */
+public class DownloadPipeline {
+	private static final Logger LOG = Logger.getLogger(DownloadPipeline.class);
+	private static final Item END = new Item(-1, null);
+	private String destinationFolder;
+	private Callable<IFilingWriter> writerFactory;
+	private int downloadWorkers = Integer.parseInt(Utils.getProperty("pipelineDownloadWorkers", "4"));
+	private int parseWorkers = Integer.parseInt(
+			Utils.getProperty("pipelineParseWorkers", String.valueOf(Runtime.getRuntime().availableProcessors())));
+	private int writers = Integer.parseInt(Utils.getProperty("pipelineWriters", "2"));
+	private int queueSize = Integer.parseInt(Utils.getProperty("pipelineQueueSize", "4"));
+	private Stage downloadStage = new Stage("download");
+	private Stage parseStage = new Stage("parse");
+	private Stage writeStage = new Stage("write");
+	private Set<String> inFlight = ConcurrentHashMap.newKeySet();
+	private List<FeedInfoRecord> records = new ArrayList();
+	private BitSet completed = new BitSet();
+	private int position;
+
+	/**
+	 * Constructor
+	 *
+	 * @param destinationFolder
+	 *            folder for the downloaded zip files
+	 * @param writerFactory
+	 *            creates a writer for each writer thread
+	 */
+	public DownloadPipeline(String destinationFolder, Callable<IFilingWriter> writerFactory) {
+		this.destinationFolder = destinationFolder;
+		this.writerFactory = writerFactory;
+	}
+
+	/**
+	 * Processes all records and waits until they have been saved
+	 *
+	 * @param input
+	 * @throws InterruptedException
+	 */
+	public void process(Collection<FeedInfoRecord> input) throws InterruptedException {
+		BlockingQueue<Item> downloadQueue = new ArrayBlockingQueue(queueSize);
+		BlockingQueue<Item> parseQueue = new ArrayBlockingQueue(queueSize);
+		BlockingQueue<Item> writeQueue = new ArrayBlockingQueue(queueSize);
+
+		ExecutorService download = start(downloadWorkers, () -> run(downloadQueue, parseQueue, downloadStage, null));
+		ExecutorService parse = start(parseWorkers, () -> run(parseQueue, writeQueue, parseStage, null));
+		ExecutorService write = start(writers, () -> runWriter(writeQueue));
+
+		for (FeedInfoRecord info : input) {
+			// the same file is processed only once
+			if (inFlight.add(info.getFile(destinationFolder).getName())) {
+				Item item = new Item(register(info), info);
+				downloadQueue.put(item);
+			}
+		}
+
+		stop(download, downloadQueue, downloadWorkers);
+		stop(parse, parseQueue, parseWorkers);
+		stop(write, writeQueue, writers);
+		LOG.info("Pipeline completed: " + getCompleted() + " of " + records.size() + " filings; " + downloadStage
+				+ "; " + parseStage + "; " + writeStage + "; http: " + HttpDownloader.getInstance());
+	}
+
+	private ExecutorService start(int threads, Runnable worker) {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int j = 0; j < threads; j++) {
+			executor.submit(worker);
+		}
+		return executor;
+	}
+
+	private void stop(ExecutorService executor, BlockingQueue<Item> queue, int threads) throws InterruptedException {
+		for (int j = 0; j < threads; j++) {
+			queue.put(END);
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	private void run(BlockingQueue<Item> input, BlockingQueue<Item> output, Stage stage, IFilingWriter writer) {
+		try {
+			Item item;
+			while ((item = input.take()) != END) {
+				long start = System.nanoTime();
+				boolean ok = false;
+				try {
+					if (stage == downloadStage) {
+						download(item);
+					} else if (stage == parseStage) {
+						parse(item);
+					} else {
+						write(item, writer);
+					}
+					ok = true;
+				} catch (Exception ex) {
+					LOG.error("The " + stage.getName() + " of " + item.info.getUriXbrl() + " failed: " + ex, ex);
+				}
+				stage.add(ok, System.nanoTime() - start);
+				if (!ok || output == null) {
+					complete(item.seq);
+				} else {
+					long wait = System.nanoTime();
+					output.put(item);
+					stage.addWait(System.nanoTime() - wait);
+				}
+			}
+		} catch (InterruptedException ex) {
+			LOG.warn("The " + stage.getName() + " was interrupted");
+		}
+	}
+
+	private void runWriter(BlockingQueue<Item> input) {
+		IFilingWriter writer = null;
+		try {
+			writer = writerFactory.call();
+			run(input, null, writeStage, writer);
+		} catch (Exception ex) {
+			LOG.error("Could not create the writer: " + ex, ex);
+			// we need to consume the queue so that the other stages can complete
+			drain(input);
+		} finally {
+			try {
+				if (writer != null) {
+					writer.close();
+				}
+			} catch (Exception ex) {
+				LOG.error("Could not close the writer: " + ex, ex);
+			}
+		}
+	}
+
+	private void drain(BlockingQueue<Item> input) {
+		try {
+			Item item;
+			while ((item = input.take()) != END) {
+				writeStage.add(false, 0);
+				complete(item.seq);
+			}
+		} catch (InterruptedException ex) {
+			LOG.warn("The write was interrupted");
+		}
+	}
+
+	protected void download(Item item) throws Exception {
+		File file = item.info.getFile(destinationFolder);
+		DataDownload loader = new DataDownload(item.info.getUriXbrl());
+		if (loader.isDownloadRequired(file)) {
+			LOG.info("+" + item.info);
+			loader.load(file);
+		} else {
+			LOG.info("-" + item.info);
+		}
+		item.file = file;
+	}
+
+	protected void parse(Item item) throws Exception {
+		XBRL xbrl = new XBRL();
+		// we only need the values and their labels
+		xbrl.setLazyLinkbases(true);
+		xbrl.setSkipHtml(true);
+		xbrl.load(item.file);
+		item.xbrl = xbrl;
+		prepare(xbrl);
+	}
+
+	/**
+	 * Completes the parsed document w/o using the database (e.g. with the online
+	 * company information), so that the writers are not blocked by this. The
+	 * method is called by the parse workers.
+	 *
+	 * @param xbrl
+	 * @throws Exception
+	 */
+	protected void prepare(XBRL xbrl) throws Exception {
+	}
+
+	protected void write(Item item, IFilingWriter writer) throws Exception {
+		try {
+			if (!writer.save(item.xbrl)) {
+				LOG.info("File was already loaded: " + item.file.getName());
+			}
+		} finally {
+			item.xbrl.close();
+			item.xbrl = null;
+		}
+	}
+
+	private synchronized int register(FeedInfoRecord info) {
+		records.add(info);
+		return records.size() - 1;
+	}
+
+	/**
+	 * Records the completion of a filing and advances the completed position
+	 *
+	 * @param seq
+	 */
+	private synchronized void complete(int seq) {
+		completed.set(seq);
+		while (completed.get(position)) {
+			position++;
+		}
+	}
+
+	/**
+	 * Number of filings (in the sequence of the input) which have been completed
+	 * w/o gap. This includes the filings which have failed in any stage.
+	 *
+	 * @return
+	 */
+	public synchronized int getCompleted() {
+		return position;
+	}
+
+	public Stage getDownloadStage() {
+		return downloadStage;
+	}
+
+	public Stage getParseStage() {
+		return parseStage;
+	}
+
+	public Stage getWriteStage() {
+		return writeStage;
+	}
+
+	public int getDownloadWorkers() {
+		return downloadWorkers;
+	}
+
+	public void setDownloadWorkers(int downloadWorkers) {
+		this.downloadWorkers = downloadWorkers;
+	}
+
+	public int getParseWorkers() {
+		return parseWorkers;
+	}
+
+	public void setParseWorkers(int parseWorkers) {
+		this.parseWorkers = parseWorkers;
+	}
+
+	public int getWriters() {
+		return writers;
+	}
+
+	public void setWriters(int writers) {
+		this.writers = writers;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * Defines the capacity of the queues between the stages
+	 *
+	 * @param queueSize
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Filing which is passed between the stages
+	 */
+	protected static class Item {
+		private int seq;
+		private FeedInfoRecord info;
+		private File file;
+		private XBRL xbrl;
+
+		Item(int seq, FeedInfoRecord info) {
+			this.seq = seq;
+			this.info = info;
+		}
+	}
+
+	/**
+	 * Metrics of a stage: number of processed and failed filings, the time which
+	 * was used for the processing and the time which was spent waiting for the
+	 * next stage.
+	 */
+	public static class Stage {
+		private String name;
+		private AtomicLong processed = new AtomicLong();
+		private AtomicLong failed = new AtomicLong();
+		private AtomicLong nanos = new AtomicLong();
+		private AtomicLong waitNanos = new AtomicLong();
+
+		Stage(String name) {
+			this.name = name;
+		}
+
+		void add(boolean ok, long nanos) {
+			(ok ? processed : failed).incrementAndGet();
+			this.nanos.addAndGet(nanos);
+		}
+
+		void addWait(long nanos) {
+			this.waitNanos.addAndGet(nanos);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getProcessed() {
+			return processed.get();
+		}
+
+		public long getFailed() {
+			return failed.get();
+		}
+
+		/**
+		 * Processing time in milliseconds (summed up over all workers)
+		 *
+		 * @return
+		 */
+		public long getTime() {
+			return nanos.get() / 1000000;
+		}
+
+		/**
+		 * Time in milliseconds which the workers were blocked by the next stage
+		 *
+		 * @return
+		 */
+		public long getWaitTime() {
+			return waitNanos.get() / 1000000;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + getProcessed() + " processed, " + getFailed() + " failed, " + getTime() + " ms, "
+					+ getWaitTime() + " ms blocked";
+		}
+	}
+
+}
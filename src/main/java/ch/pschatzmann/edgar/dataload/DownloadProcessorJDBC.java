@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.SQLException;
@@ -14,12 +15,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.Timer;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -32,6 +32,7 @@ import ch.pschatzmann.edgar.base.EdgarCompany;
 import ch.pschatzmann.edgar.base.Fact;
 import ch.pschatzmann.edgar.base.Fact.DataType;
 import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.base.FactValue;
 import ch.pschatzmann.edgar.base.XBRL;
 import ch.pschatzmann.edgar.base.errors.DataException;
 import ch.pschatzmann.edgar.base.errors.DataLoadException;
@@ -43,6 +44,7 @@ import ch.pschatzmann.edgar.dataload.online.TradingSymbol;
 import ch.pschatzmann.edgar.dataload.rss.DataDownload;
 import ch.pschatzmann.edgar.dataload.rss.FeedInfoRecord;
 import ch.pschatzmann.edgar.dataload.rss.RSSDataSource;
+import ch.pschatzmann.edgar.utils.ConnectionPool;
 import ch.pschatzmann.edgar.utils.Utils;
 
 /**
@@ -58,9 +60,10 @@ import ch.pschatzmann.edgar.utils.Utils;
  *
  */
 
-public class DownloadProcessorJDBC implements IProcess {
+public class DownloadProcessorJDBC implements IProcess, IFilingWriter {
 	private static final Logger LOG = Logger.getLogger(DownloadProcessorJDBC.class);
 	private TableFactory tableFactory = new TableFactory();
+	private FilingLedger ledger = new FilingLedger(tableFactory);
 	private List<String> companyFields = Arrays.asList("identifier", "companyName", "sicCode", "sicDescription",
 			"tradingSymbol", "incorporation", "location");
 	private List<String> valueFields = Arrays.asList("date", "identifier", "parameterName", "label", "numberOfMonths",
@@ -69,6 +72,11 @@ public class DownloadProcessorJDBC implements IProcess {
 	private String destinationFolder = null;
 	private DateFormat df = new SimpleDateFormat("yyyyMMdd");
 	private boolean history; // also load history rrs
+	private boolean streaming = "true".equalsIgnoreCase(Utils.getProperty("streamingLoad", "false"));
+	private boolean bulkLoad = "true".equalsIgnoreCase(Utils.getProperty("bulkLoad", "false"));
+	private boolean pipeline = "true".equalsIgnoreCase(Utils.getProperty("pipeline", "false"));
+	private CopyLoader copyLoader;
+	private String stagingTable = "values_staging";
 
 	public DownloadProcessorJDBC() throws IOException, TimeoutException, ClassNotFoundException, SQLException,
 			InterruptedException, ParseException {
@@ -118,11 +126,15 @@ public class DownloadProcessorJDBC implements IProcess {
 			data = getUnprocessedRecords(data);
 			LOG.info("Number of unprocessed files: " + data.size());
 
-			for (FeedInfoRecord info : data) {
-				try {
-					this.process(info);
-				} catch(Exception ex) {
-					LOG.error(ex,ex);
+			if (pipeline) {
+				processPipeline(data);
+			} else {
+				for (FeedInfoRecord info : data) {
+					try {
+						this.process(info);
+					} catch(Exception ex) {
+						LOG.error(ex,ex);
+					}
 				}
 			}
 			
@@ -135,13 +147,36 @@ public class DownloadProcessorJDBC implements IProcess {
 		}
 	}
 
+	/**
+	 * Downloads, parses and saves the filings in parallel (see DownloadPipeline).
+	 * Each writer uses its own database connection and in the bulk load mode its
+	 * own staging table.
+	 * 
+	 * @param data
+	 * @throws InterruptedException
+	 */
+	protected void processPipeline(Collection<FeedInfoRecord> data) throws InterruptedException {
+		AtomicInteger writers = new AtomicInteger();
+		DownloadPipeline downloadPipeline = new DownloadPipeline(destinationFolder, () -> {
+			DownloadProcessorJDBC writer = new DownloadProcessorJDBC();
+			writer.setBulkLoad(bulkLoad);
+			writer.setStagingTable(stagingTable + "_" + writers.incrementAndGet());
+			return writer;
+		}) {
+			@Override
+			protected void prepare(XBRL xbrl) throws Exception {
+				updateCompanyInfo(xbrl);
+			}
+		};
+		downloadPipeline.process(data);
+	}
+
 	private Collection<FeedInfoRecord> getUnprocessedRecords(Collection<FeedInfoRecord> input)
 			throws ClassNotFoundException, SQLException, DataLoadException {
 		Collection<FeedInfoRecord> result = new ArrayList();
-		Set<String> processedFiles = new HashSet(tableFactory.getList("select distinct file from values"));
 		int count = 0;
 		for (FeedInfoRecord rec : input) {
-			if (!processedFiles.contains(rec.getFile("").getName())) {
+			if (!ledger.isLoaded(rec.getFile("").getName())) {
 				result.add(rec);
 			} else {
 				count++;
@@ -182,7 +217,7 @@ public class DownloadProcessorJDBC implements IProcess {
 		try {
 			DataDownload loader = new DataDownload(info.getUriXbrl());
 			File file = info.getFile(destinationFolder);
-			if (!loader.isValidDownloadFile(file)) {
+			if (loader.isDownloadRequired(file)) {
 				LOG.info("+" + info);
 				loader.load(file);
 			} else {
@@ -193,7 +228,11 @@ public class DownloadProcessorJDBC implements IProcess {
 
 		} catch (Exception ex) {
 			LOG.error(ex, ex);
+			if (copyLoader != null) {
+				copyLoader.cancel();
+			}
 			tableFactory.rollback();
+			ledger.rollback();
 		}
 
 	}
@@ -205,40 +244,144 @@ public class DownloadProcessorJDBC implements IProcess {
 			SQLException, ParseException, ClassNotFoundException, FeedException, DataException {
 		LOG.info("Processing " + currentURL);
 		String fileName = Utils.lastPath(currentURL.toString());
-		if (reload || !tableFactory.hasNext("select file from values where file='" + fileName + "' limit 1", false)) {
-			XBRL xbrl = new XBRL();
-			xbrl.load(currentURL);
-			// update company file
-			saveCompany(xbrl);
-			saveXBRL(xbrl);
-
+		if (reload || !ledger.isLoaded(fileName)) {
+			if (streaming) {
+				loadToDatabaseStreaming(currentURL);
+			} else {
+				XBRL xbrl = new XBRL();
+				// we only need the values and their labels
+				xbrl.setLazyLinkbases(true);
+				xbrl.setSkipHtml(true);
+				xbrl.load(currentURL);
+				updateCompanyInfo(xbrl);
+				saveFiling(xbrl);
+			}
 		} else {
 			LOG.info("File was already laoded");
 		}
 	}
 
-	
+	/**
+	 * The numeric values are written to the database while the filing is
+	 * parsed, so that we do not need to keep the whole document in memory
+	 * 
+	 * @param currentURL
+	 */
+	protected void loadToDatabaseStreaming(URL currentURL) throws SAXException, IOException,
+			ParserConfigurationException, SQLException, ParseException, ClassNotFoundException, FeedException,
+			DataException {
+		XBRL xbrl = new XBRL();
+		long count = xbrl.stream(currentURL, rec -> {
+			try {
+				addValue(rec.getAttributes());
+			} catch (SQLException ex) {
+				throw new RuntimeException(ex);
+			}
+		});
+		// the COPY must be completed before we can use the connection again
+		endCopy(xbrl);
+		// update company file: the company is only known after the parse. The
+		// streamed values stay in the open transaction.
+		saveCompany(xbrl);
+		// the streamed document does not keep the loaded urls
+		ledger.record(xbrl, currentURL, getLoadedStatus(), (int) count);
+		// the pending batch is sent on commit: the statement is reused for the next filing
+		commitValues();
+		LOG.info("-> Saving facts for " + xbrl.getFilingInfo().getFileName() + ": " + count + " ("
+				+ getMetrics() + ")");
+	}
+
 	public void saveXBRL(XBRL xbrl) throws SQLException, ParseException, ClassNotFoundException {
 		Collection<Fact> facts = xbrl.find(Type.value);
 		if (!facts.isEmpty()) {			
 			int count = addValues(facts);
-			LOG.info("-> Saving facts for "+xbrl.getFilingInfo().getFileName()+": "+count);
-			tableFactory.close("values");
-			tableFactory.commit();
+			// the COPY must be completed before we can use the connection again
+			endCopy(xbrl);
+			ledger.record(xbrl, getLoadedStatus(), count);
+			commitValues();
+			LOG.info("-> Saving facts for " + xbrl.getFilingInfo().getFileName() + ": " + count + " ("
+					+ getMetrics() + ")");
 
 		} else {
 			LOG.info("No facts available");
+			ledger.record(xbrl, FilingLedger.LOADED, 0);
+			tableFactory.commit();
+			ledger.commit();
 		}
 	}
 
 	public void saveCompany(XBRL xbrl) throws SQLException, ParseException, ClassNotFoundException, MalformedURLException, IOException, FeedException, DataException {
+		updateCompanyInfo(xbrl);
+		saveCompanyInDB(xbrl);
+	}
+
+	/**
+	 * Determines the trading symbol and updates the company file with the
+	 * online information. The database is not used.
+	 * 
+	 * @param xbrl
+	 * @throws MalformedURLException
+	 * @throws IOException
+	 * @throws FeedException
+	 * @throws DataException
+	 */
+	public void updateCompanyInfo(XBRL xbrl) throws MalformedURLException, IOException, FeedException, DataException {
 		String tradingSymbol = xbrl.getCompanyInfo().getTradingSymbol();
 		if (Utils.isEmpty(tradingSymbol)) {
 			// we determine the ticker symbol from the ownership filings
 			((EdgarCompany)xbrl.getCompanyInfo()).setTradingSymbol(new TradingSymbol(xbrl.getCompanyNumber()).getTradingSymbol());
 		}
 		updateCompanyFile(xbrl);
-		saveCompanyInDB(xbrl);
+	}
+
+	/**
+	 * Saves the company and the values of a filing which was prepared with
+	 * updateCompanyInfo (see DownloadPipeline). Returns false if the filing was
+	 * already loaded.
+	 */
+	@Override
+	public boolean save(XBRL xbrl) throws Exception {
+		if (ledger.isLoaded(xbrl.getFilingInfo().getFileName())) {
+			return false;
+		}
+		saveFiling(xbrl);
+		return true;
+	}
+
+	/**
+	 * Saves the company and the values. If this fails the filing is recorded as
+	 * failed in the ledger
+	 * 
+	 * @param xbrl
+	 * @throws SQLException
+	 * @throws ParseException
+	 * @throws ClassNotFoundException
+	 */
+	protected void saveFiling(XBRL xbrl) throws SQLException, ParseException, ClassNotFoundException {
+		try {
+			saveCompanyInDB(xbrl);
+			saveXBRL(xbrl);
+		} catch (SQLException | ParseException | ClassNotFoundException | RuntimeException ex) {
+			if (copyLoader != null) {
+				copyLoader.cancel();
+			}
+			tableFactory.rollback();
+			ledger.rollback();
+			try {
+				ledger.record(xbrl, FilingLedger.FAILED, 0);
+				tableFactory.commit();
+				ledger.commit();
+			} catch (Exception ex1) {
+				ledger.rollback();
+				LOG.error("Could not record the failure: " + ex1);
+			}
+			throw ex;
+		}
+	}
+
+	private String getLoadedStatus() {
+		// in the bulk load the values are only loaded with the merge
+		return bulkLoad ? FilingLedger.STAGED : FilingLedger.LOADED;
 	}
 
 	public void saveCompanyInDB(XBRL xbrl) throws SQLException, ParseException, ClassNotFoundException {
@@ -260,25 +403,88 @@ public class DownloadProcessorJDBC implements IProcess {
 	}
 
 	protected int addValues(Collection<Fact> facts) throws SQLException {
-		List<String> attributes = new ArrayList(valueFields);
 		int count = 0;
 		for (Fact f : facts) {
 			if (f.getDataType() == DataType.number) {
-				try {
-					count++;
-					tableFactory.addRecord("values", attributes, f.getAttributes(), "valueskey");
-				} catch (SQLException ex) {
-					LOG.error(ex, ex.getNextException());
-					tableFactory.commit();
-				} catch (Exception ex) {
-					LOG.error(ex);
-					tableFactory.commit();
-				}
+				count++;
+				addValue(f.getAttributes(), f instanceof FactValue ? ((FactValue) f).getNumber() : null);
 			}
 		}
 		return count;
 	}
 
+	protected void addValue(Map<String, String> values) throws SQLException {
+		addValue(values, null);
+	}
+
+	protected void addValue(Map<String, String> values, BigDecimal number) throws SQLException {
+		try {
+			if (bulkLoad) {
+				getCopyLoader().addRecord(values, number);
+			} else {
+				tableFactory.addRecord("values", valueFields, values, "valueskey", number);
+			}
+		} catch (SQLException ex) {
+			if (bulkLoad) {
+				// the COPY is broken: the filing can not be loaded
+				throw ex;
+			}
+			LOG.error(ex, ex.getNextException());
+			tableFactory.commit();
+		} catch (Exception ex) {
+			if (bulkLoad) {
+				throw new SQLException(ex);
+			}
+			LOG.error(ex);
+			tableFactory.commit();
+		}
+	}
+
+	/**
+	 * Completes the values of the current filing. In the bulk load mode the
+	 * staged records are merged into the values table after a number of filings.
+	 * The ledger cache is updated when the transaction was committed.
+	 * 
+	 * @throws SQLException
+	 */
+	protected void commitValues() throws SQLException {
+		if (bulkLoad) {
+			try {
+				getCopyLoader().endFiling();
+			} catch (ClassNotFoundException ex) {
+				throw new SQLException(ex);
+			}
+		}
+		tableFactory.commit();
+		ledger.commit();
+	}
+
+	/**
+	 * Completes the COPY of the current filing in the bulk load mode. The filing
+	 * is marked as loaded when the staged values are merged.
+	 * 
+	 * @param xbrl
+	 * @throws SQLException
+	 */
+	protected void endCopy(XBRL xbrl) throws SQLException {
+		if (bulkLoad) {
+			getCopyLoader().endCopy(xbrl.getFilingInfo().getFileName());
+		}
+	}
+
+	protected CopyLoader getCopyLoader() {
+		if (copyLoader == null) {
+			copyLoader = new CopyLoader(tableFactory, "values", valueFields, "valueskey");
+			copyLoader.setStagingTableName(stagingTable);
+			copyLoader.setMergeStatement(ledger.getMarkLoadedStatement());
+		}
+		return copyLoader;
+	}
+
+	protected LoadMetrics getMetrics() {
+		return bulkLoad ? getCopyLoader().getMetrics() : tableFactory.getMetrics();
+	}
+
 	protected void addCompanyRecord(XBRL xbrl) throws SQLException, ParseException, ClassNotFoundException {
 		Fact first = xbrl.first((xbrl.find(Type.value)));
 		if (first != XBRL.EMPTY) {
@@ -311,6 +517,8 @@ public class DownloadProcessorJDBC implements IProcess {
 			LOG.info("Creating states");
 			createTableStates();
 		}
+
+		ledger.open();
 		
 		tableFactory.commit();
 	}
@@ -377,14 +585,76 @@ public class DownloadProcessorJDBC implements IProcess {
 		
 	}
 	
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Loads the values with the streaming parser (see XBRL.stream)
+	 * 
+	 * @param streaming
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public boolean isBulkLoad() {
+		return bulkLoad;
+	}
+
+	/**
+	 * Loads the values with COPY into a staging table which is merged into the
+	 * values table (see CopyLoader)
+	 * 
+	 * @param bulkLoad
+	 */
+	public void setBulkLoad(boolean bulkLoad) {
+		this.bulkLoad = bulkLoad;
+	}
+
+	public String getStagingTable() {
+		return stagingTable;
+	}
+
+	/**
+	 * Defines the staging table of the bulk load. Loaders which are running in
+	 * parallel must use different tables.
+	 * 
+	 * @param stagingTable
+	 */
+	public void setStagingTable(String stagingTable) {
+		this.stagingTable = stagingTable;
+	}
+
+	public FilingLedger getLedger() {
+		return ledger;
+	}
+
+	public boolean isPipeline() {
+		return pipeline;
+	}
+
+	/**
+	 * Processes the filings with a DownloadPipeline
+	 * 
+	 * @param pipeline
+	 */
+	public void setPipeline(boolean pipeline) {
+		this.pipeline = pipeline;
+	}
+
 	public void setDestinationFolder(String folder) {
 		this.destinationFolder = folder;
 	}
 
 	public void close() throws XBRLException {
 		try {
+			if (copyLoader != null) {
+				copyLoader.close();
+			}
 			tableFactory.close();
-		} catch (SQLException e) {
+			LOG.info("Connection pool: " + ConnectionPool.getInstance());
+		} catch (SQLException | ClassNotFoundException e) {
 			throw new XBRLException(e);
 		}
 	}
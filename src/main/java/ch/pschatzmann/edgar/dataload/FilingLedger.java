@@ -0,0 +1,268 @@
+package ch.pschatzmann.edgar.dataload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+
+import ch.pschatzmann.edgar.base.EdgarFiling;
+import ch.pschatzmann.edgar.base.XBRL;
+
+/**
+ * Ledger of the processed filings which is stored in the filings table: file,
+ * identifier, form, period, status, number of facts, load time and the
+ * checksum of the zip file (which is determined from the CRCs of the zip
+ * entries). The loaded files are cached, so that the check if
+ * a filing needs to be processed does not need to access the values table.
+ * Files which are not in the cache are looked up by their key.
+ *
+ * The records are written in the current transaction: the cache is only
+ * updated with commit(), after the transaction was committed.
+ *
+ * When the table is created it is initialized from the values table.
+ *
+ * @author pschatzmann
+ *
+ */
+public class FilingLedger {
+	private static final Logger LOG = Logger.getLogger(FilingLedger.class);
+	public static final String LOADED = "loaded";
+	public static final String STAGED = "staged";
+	public static final String FAILED = "failed";
+	private static final List<String> FIELDS = Arrays.asList("file", "identifier", "form", "period", "status",
+			"facts", "loadtime", "checksum");
+	private TableFactory tableFactory;
+	private Set<String> loaded = ConcurrentHashMap.newKeySet();
+	private Map<String, String> pending = new ConcurrentHashMap();
+
+	/**
+	 * Constructor
+	 *
+	 * @param tableFactory
+	 */
+	public FilingLedger(TableFactory tableFactory) {
+		this.tableFactory = tableFactory;
+	}
+
+	/**
+	 * Creates the filings table if necessary and loads the cache
+	 *
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public void open() throws SQLException, ClassNotFoundException {
+		if (!tableFactory.hasNext("select * from information_schema.tables where table_name = 'filings'", false)) {
+			createTable();
+		}
+		loaded.clear();
+		loaded.addAll(tableFactory.getList("select file from filings where status = '" + LOADED + "'"));
+		LOG.info("Number of loaded filings: " + loaded.size());
+	}
+
+	protected void createTable() throws SQLException {
+		LOG.info("Creating filings");
+		tableFactory.putType("facts", "INTEGER");
+		tableFactory.putType("loadtime", "TIMESTAMP");
+		tableFactory.createTable("filings", FIELDS);
+		tableFactory.addIndex("ALTER TABLE filings ADD CONSTRAINT filingskey PRIMARY KEY (file)");
+		tableFactory.addIndex("create index idx_filings1 on filings(identifier)");
+		// one time initialization with the files which have already been loaded
+		tableFactory.execute("INSERT INTO filings (file, identifier, form, status, facts) "
+				+ "SELECT file, max(identifier), max(form), '" + LOADED + "', count(*) FROM values GROUP BY file "
+				+ "ON CONFLICT ON CONSTRAINT filingskey DO NOTHING");
+	}
+
+	/**
+	 * Returns true if the file has been loaded
+	 *
+	 * @param file
+	 * @return
+	 */
+	public boolean isLoaded(String file) {
+		if (loaded.contains(file)) {
+			return true;
+		}
+		try {
+			Connection connection = tableFactory.getConnection();
+			try (PreparedStatement ps = connection.prepareStatement("select status from filings where file = ?")) {
+				ps.setString(1, file);
+				try (ResultSet rs = ps.executeQuery()) {
+					if (rs.next() && LOADED.equals(rs.getString(1))) {
+						loaded.add(file);
+						return true;
+					}
+				}
+			}
+		} catch (Exception ex) {
+			LOG.warn("Could not determine the status of " + file + ": " + ex);
+		}
+		return false;
+	}
+
+	/**
+	 * Records the processing of the filing. The record is written in the current
+	 * transaction, so that it is committed together with the values. Call
+	 * commit() when the transaction was committed. The source file is
+	 * determined from the loaded urls of the document.
+	 *
+	 * @param xbrl
+	 * @param status
+	 * @param facts
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public void record(XBRL xbrl, String status, int facts) throws SQLException, ClassNotFoundException {
+		String file = xbrl.getFilingInfo().getFileName();
+		URL source = null;
+		for (URL url : xbrl.getLoadedURLs()) {
+			if ("file".equals(url.getProtocol()) && url.getPath().endsWith("/" + file)) {
+				source = url;
+				break;
+			}
+		}
+		record(xbrl, source, status, facts);
+	}
+
+	/**
+	 * Records the processing of the filing which was loaded from the indicated
+	 * source (e.g. in streaming mode where the document does not keep the
+	 * loaded urls)
+	 *
+	 * @param xbrl
+	 * @param source
+	 * @param status
+	 * @param facts
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public void record(XBRL xbrl, URL source, String status, int facts) throws SQLException, ClassNotFoundException {
+		EdgarFiling filing = xbrl.getFilingInfo();
+		String file = filing.getFileName();
+		StringBuffer sb = new StringBuffer();
+		sb.append("INSERT INTO filings (");
+		sb.append(String.join(", ", FIELDS));
+		sb.append(") VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT ON CONSTRAINT filingskey DO UPDATE SET ");
+		for (int j = 1; j < FIELDS.size(); j++) {
+			if (j > 1) {
+				sb.append(", ");
+			}
+			sb.append(FIELDS.get(j));
+			sb.append(" = EXCLUDED.");
+			sb.append(FIELDS.get(j));
+		}
+		try (PreparedStatement ps = tableFactory.getConnection().prepareStatement(sb.toString())) {
+			ps.setString(1, file);
+			ps.setString(2, xbrl.getCompanyNumber());
+			ps.setString(3, filing.getForm());
+			ps.setString(4, getPeriod(filing));
+			ps.setString(5, status);
+			ps.setInt(6, facts);
+			ps.setTimestamp(7, new Timestamp(System.currentTimeMillis()));
+			ps.setString(8, getChecksum(source));
+			ps.executeUpdate();
+		}
+		pending.put(file, status);
+	}
+
+	/**
+	 * Updates the cache with the records of the committed transaction
+	 */
+	public void commit() {
+		for (Map.Entry<String, String> entry : pending.entrySet()) {
+			if (LOADED.equals(entry.getValue()) || STAGED.equals(entry.getValue())) {
+				loaded.add(entry.getKey());
+			} else {
+				loaded.remove(entry.getKey());
+			}
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Discards the records of the transaction which was rolled back
+	 */
+	public void rollback() {
+		pending.clear();
+	}
+
+	/**
+	 * SQL which marks a staged filing (the parameter is the file) as loaded. It
+	 * is executed in the transaction which merges the staged values (see
+	 * CopyLoader), so only the filings of the merged staging table are marked.
+	 *
+	 * @return
+	 */
+	public String getMarkLoadedStatement() {
+		return "UPDATE filings SET status = '" + LOADED + "' WHERE file = ? AND status = '" + STAGED + "'";
+	}
+
+	private String getPeriod(EdgarFiling filing) {
+		try {
+			return filing.getDate();
+		} catch (Exception ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Determines the CRC32 checksum of the zip file. For zip files we use the
+	 * names, sizes and CRCs of the entries, which are available from the central
+	 * directory, so the content does not need to be read again.
+	 *
+	 * @param source
+	 * @return
+	 */
+	private String getChecksum(URL source) {
+		if (source == null || !"file".equals(source.getProtocol())) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		try {
+			File file = new File(source.toURI());
+			if (file.getName().endsWith(".zip")) {
+				try (ZipFile zip = new ZipFile(file)) {
+					ByteBuffer buffer = ByteBuffer.allocate(16);
+					for (ZipEntry entry : Collections.list(zip.entries())) {
+						crc.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+						buffer.clear();
+						buffer.putLong(entry.getSize()).putLong(entry.getCrc());
+						crc.update(buffer.array());
+					}
+				}
+			} else {
+				byte[] buffer = new byte[1 << 16];
+				try (InputStream in = new FileInputStream(file)) {
+					int len;
+					while ((len = in.read(buffer)) > 0) {
+						crc.update(buffer, 0, len);
+					}
+				}
+			}
+			return Long.toHexString(crc.getValue());
+		} catch (IOException | URISyntaxException | IllegalArgumentException ex) {
+			LOG.warn("Could not determine the checksum of " + source + ": " + ex);
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package ch.pschatzmann.edgar.dataload;
+
+import ch.pschatzmann.edgar.base.XBRL;
+
+/**
+ * Destination of the parsed filings which are processed by the
+ * DownloadPipeline. Each writer is used by one thread only.
+ * 
+ * @author pschatzmann
+ *
+ */
+public interface IFilingWriter {
+	/**
+	 * Saves the filing in one transaction. Returns false if the filing had
+	 * already been saved before.
+	 * 
+	 * @param xbrl
+	 * @return
+	 * @throws Exception
+	 */
+	public boolean save(XBRL xbrl) throws Exception;
+
+	public void close() throws Exception;
+}
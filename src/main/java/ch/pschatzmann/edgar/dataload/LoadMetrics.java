@@ -0,0 +1,97 @@
+package ch.pschatzmann.edgar.dataload;
+
+/**
+ * Counters for the records which were written to the database: inserted
+ * records, records which were ignored because of a conflict with the unique
+ * constraint and records which failed.
+ *
+ * @author pschatzmann
+ *
+ */
+public class LoadMetrics {
+	private long inserted;
+	private long conflicts;
+	private long errors;
+	private long batches;
+	private long nanos;
+
+	public synchronized void addInserted(long count) {
+		this.inserted += count;
+	}
+
+	public synchronized void addConflicts(long count) {
+		this.conflicts += count;
+	}
+
+	public synchronized void addErrors(long count) {
+		this.errors += count;
+	}
+
+	/**
+	 * Records the execution of a batch and the time which was used for it
+	 *
+	 * @param nanos
+	 */
+	public synchronized void addBatch(long nanos) {
+		this.batches++;
+		this.nanos += nanos;
+	}
+
+	public synchronized long getInserted() {
+		return inserted;
+	}
+
+	public synchronized long getConflicts() {
+		return conflicts;
+	}
+
+	public synchronized long getErrors() {
+		return errors;
+	}
+
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Total number of records which were sent to the database
+	 *
+	 * @return
+	 */
+	public synchronized long getRows() {
+		return inserted + conflicts + errors;
+	}
+
+	/**
+	 * Time in milliseconds which was spent in the database calls
+	 *
+	 * @return
+	 */
+	public synchronized long getTime() {
+		return nanos / 1000000;
+	}
+
+	/**
+	 * Number of processed rows per second of database time
+	 *
+	 * @return
+	 */
+	public synchronized double getRowsPerSecond() {
+		return nanos == 0 ? 0.0 : getRows() * 1000000000.0 / nanos;
+	}
+
+	public synchronized void clear() {
+		inserted = 0;
+		conflicts = 0;
+		errors = 0;
+		batches = 0;
+		nanos = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "inserted=" + inserted + ", conflicts=" + conflicts + ", errors=" + errors + ", batches=" + batches
+				+ ", " + Math.round(getRowsPerSecond()) + " rows/sec";
+	}
+
+}
@@ -1,15 +1,17 @@
 package ch.pschatzmann.edgar.dataload;
 
 import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.Date;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -17,10 +19,15 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import ch.pschatzmann.edgar.utils.ConnectionPool;
 import ch.pschatzmann.edgar.utils.Utils;
 
 /**
- * Basic SQL functionality
+ * Basic SQL functionality. The records are inserted with JDBC batches: the
+ * pending records of a table are sent when the batch size is reached, on
+ * commit and on close. If a batch fails the records are executed
+ * individually, so that a single invalid record does not prevent the load of
+ * the others.
  * 
  * @author pschatzmann
  *
@@ -31,6 +38,9 @@ public class TableFactory {
 	private Connection connection;
 	private Map<String, PreparedStatement> psMap = new HashMap();
 	private Map<String, String> typeMap = new HashMap();
+	private Map<String, List<Object[]>> batchMap = new HashMap();
+	private int batchSize = Integer.parseInt(Utils.getProperty("jdbcBatchSize", "1000"));
+	private LoadMetrics metrics = new LoadMetrics();
 
 	/**
 	 * Creates a new table with the indicated fields
@@ -73,23 +83,48 @@ public class TableFactory {
 		openConnection(false);
 	}
 
+	/**
+	 * Gets a connection from the ConnectionPool. It is returned to the pool when
+	 * the TableFactory is closed. An open connection is used as is, so that the
+	 * current transaction (e.g. with the values of a filing) is not lost.
+	 * 
+	 * @param autoCommit
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
 	public void openConnection(boolean autoCommit) throws SQLException, ClassNotFoundException {
 		if (connection == null || connection.isClosed()) {
-			Class.forName(Utils.getProperty("jdbcDriver", "org.postgresql.Driver"));
-			String url = getUrl();
-			String user = Utils.getProperty("jdbcUser", "edgar");
-			String password = Utils.getProperty("jdbcPassword", "edgar");
-
-			LOG.info(url);
-			connection = DriverManager.getConnection(url, user, password);
+			psMap.clear();
+			connection = ConnectionPool.getInstance().getConnection();
 			connection.setAutoCommit(autoCommit);
 		}
-		connection.rollback();
 	}
 
-	private String getUrl() {
-		String url = Utils.getProperty("jdbcURL", "jdbc:postgresql://nuc.local:5432/edgar");
-		return url;
+	/**
+	 * After a failed statement the transaction can not be used any more
+	 */
+	private void rollbackFailed() {
+		try {
+			if (connection != null && !connection.isClosed() && !connection.getAutoCommit()) {
+				rollback();
+			}
+		} catch (SQLException ex) {
+			LOG.warn("Could not rollback: " + ex);
+		}
+	}
+
+	/**
+	 * Provides the (open) connection
+	 * 
+	 * @return
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public Connection getConnection() throws SQLException, ClassNotFoundException {
+		if (connection == null || connection.isClosed()) {
+			openConnection();
+		}
+		return connection;
 	}
 
 	private String getDataType(String field) {
@@ -119,6 +154,7 @@ public class TableFactory {
 			}
 		} catch (Exception ex) {
 			LOG.error(ex);
+			rollbackFailed();
 		}
 		return result;
 	}
@@ -135,6 +171,7 @@ public class TableFactory {
 			}
 		} catch (Exception ex) {
 			result = defaultValue;
+			rollbackFailed();
 		}
 		return result;
 	}
@@ -166,32 +203,191 @@ public class TableFactory {
 
 	public void addRecord(String tableName, List<String> attributes, Map<String, String> record, String constraint)
 			throws SQLException, ParseException, ClassNotFoundException {
+		addRecord(tableName, attributes, record, constraint, null);
+	}
+
+	/**
+	 * Adds a record. If the number is provided it is used for the value field, so
+	 * that we do not need to parse the value string again.
+	 * 
+	 * @param tableName
+	 * @param attributes
+	 * @param record
+	 * @param constraint
+	 * @param number
+	 * @throws SQLException
+	 * @throws ParseException
+	 * @throws ClassNotFoundException
+	 */
+	public void addRecord(String tableName, List<String> attributes, Map<String, String> record, String constraint,
+			BigDecimal number) throws SQLException, ParseException, ClassNotFoundException {
 		PreparedStatement ps = getPreparedStatement(tableName);
 		if (ps == null || ps.isClosed()) {
 			ps = this.openStatement(tableName, attributes, constraint);
 		}
 
-		ps.clearParameters();
-		int j = 1;
+		Object[] row = toRow(attributes, record, number);
+		if (row == null) {
+			metrics.addErrors(1);
+			return;
+		}
+
+		if (batchSize > 1) {
+			setParameters(ps, row);
+			ps.addBatch();
+			List<Object[]> rows = batchMap.get(tableName);
+			if (rows == null) {
+				rows = new ArrayList();
+				batchMap.put(tableName, rows);
+			}
+			rows.add(row);
+			if (rows.size() >= batchSize) {
+				flush(tableName);
+			}
+		} else {
+			long start = System.nanoTime();
+			try {
+				setParameters(ps, row);
+				addResult(tableName, ps.executeUpdate(), row);
+			} catch (SQLException ex) {
+				metrics.addErrors(1);
+				throw ex;
+			} finally {
+				metrics.addBatch(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Converts the record into the parameter values of the insert statement.
+	 * Returns null if a value is not valid.
+	 * 
+	 * @param attributes
+	 * @param record
+	 * @param number
+	 * @return
+	 */
+	protected Object[] toRow(List<String> attributes, Map<String, String> record, BigDecimal number) {
+		Object[] row = new Object[attributes.size()];
+		int j = 0;
 		for (String attribute : attributes) {
 			Object value = record.get(attribute);
 			if (attribute.equals("date")) {
-				ps.setDate(j, Date.valueOf((String) value));
+				row[j] = Date.valueOf((String) value);
+			} else if (attribute.equals("value") && number != null) {
+				row[j] = number;
 			} else if (attribute.equals("value")) {
+				if (Utils.isEmpty((String) value)) {
+					LOG.error("The value is not defined: " + record);
+					return null;
+				}
 				try {
-					if (!Utils.isEmpty((String) value)) {
-						BigDecimal number = new BigDecimal((String) value);
-						ps.setObject(j, number);
-					}
+					row[j] = new BigDecimal((String) value);
 				} catch (Exception ex) {
 					LOG.error("Could not convert value to number " + value);
+					return null;
 				}
 			} else {
-				ps.setString(j, Utils.str(value));
+				row[j] = Utils.str(value);
 			}
 			j++;
 		}
-		ps.execute();
+		return row;
+	}
+
+	private void setParameters(PreparedStatement ps, Object[] row) throws SQLException {
+		ps.clearParameters();
+		for (int j = 0; j < row.length; j++) {
+			ps.setObject(j + 1, row[j]);
+		}
+	}
+
+	/**
+	 * Executes the pending records of the table
+	 * 
+	 * @param tableName
+	 * @throws SQLException
+	 */
+	public void flush(String tableName) throws SQLException {
+		List<Object[]> rows = batchMap.remove(tableName);
+		PreparedStatement ps = getPreparedStatement(tableName);
+		if (rows == null || rows.isEmpty() || ps == null) {
+			return;
+		}
+		long start = System.nanoTime();
+		Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+		try {
+			int[] counts = ps.executeBatch();
+			for (int j = 0; j < counts.length; j++) {
+				addResult(tableName, counts[j], rows.get(j));
+			}
+			release(savepoint);
+		} catch (BatchUpdateException ex) {
+			LOG.warn("The batch for " + tableName + " failed - the " + rows.size()
+					+ " records are executed individually: " + ex.getNextException());
+			ps.clearBatch();
+			int[] counts = new int[0];
+			if (savepoint != null) {
+				connection.rollback(savepoint);
+			} else {
+				// w/o transaction the successful records are already stored
+				counts = ex.getUpdateCounts();
+			}
+			for (int j = 0; j < rows.size(); j++) {
+				if (j < counts.length && counts[j] != Statement.EXECUTE_FAILED) {
+					addResult(tableName, counts[j], rows.get(j));
+				} else {
+					executeRow(ps, tableName, rows.get(j));
+				}
+			}
+		} finally {
+			metrics.addBatch(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Executes the pending records of all tables
+	 * 
+	 * @throws SQLException
+	 */
+	public void flush() throws SQLException {
+		for (String tableName : new ArrayList<String>(batchMap.keySet())) {
+			flush(tableName);
+		}
+	}
+
+	private void executeRow(PreparedStatement ps, String tableName, Object[] row) throws SQLException {
+		Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+		try {
+			setParameters(ps, row);
+			addResult(tableName, ps.executeUpdate(), row);
+			release(savepoint);
+		} catch (SQLException ex) {
+			metrics.addErrors(1);
+			LOG.error("Could not insert into " + tableName + " " + Arrays.asList(row) + ": " + ex.getMessage());
+			if (savepoint != null) {
+				connection.rollback(savepoint);
+			}
+		}
+	}
+
+	private void addResult(String tableName, int count, Object[] row) {
+		if (count == Statement.EXECUTE_FAILED) {
+			metrics.addErrors(1);
+			LOG.error("Could not insert into " + tableName + " " + Arrays.asList(row));
+		} else if (count == 0) {
+			// ON CONFLICT DO NOTHING
+			metrics.addConflicts(1);
+			LOG.debug("Existing record in " + tableName + " " + Arrays.asList(row));
+		} else {
+			metrics.addInserted(count == Statement.SUCCESS_NO_INFO ? 1 : count);
+		}
+	}
+
+	private void release(Savepoint savepoint) throws SQLException {
+		if (savepoint != null) {
+			connection.releaseSavepoint(savepoint);
+		}
 	}
 
 	private PreparedStatement getPreparedStatement(String tableName) {
@@ -259,19 +455,44 @@ public class TableFactory {
 	 */
 
 	public void close() throws SQLException {
+		flush();
 		for (PreparedStatement ps : this.psMap.values()) {
 			ps.close();
 		}
 		psMap.clear();
-		connection.commit();
-		connection.close();
+		if (connection != null) {
+			try {
+				connection.commit();
+			} finally {
+				// returns the connection to the pool
+				connection.close();
+			}
+		}
 	}
 
+	/**
+	 * Executes the pending records and commits the transaction
+	 * 
+	 * @throws SQLException
+	 */
 	public void commit() throws SQLException {
+		flush();
 		connection.commit();
 	}
 
+	/**
+	 * Rolls back the transaction and discards the pending records
+	 * 
+	 * @throws SQLException
+	 */
 	public void rollback() throws SQLException {
+		for (String tableName : batchMap.keySet()) {
+			PreparedStatement ps = getPreparedStatement(tableName);
+			if (ps != null && !ps.isClosed()) {
+				ps.clearBatch();
+			}
+		}
+		batchMap.clear();
 		connection.rollback();
 	}
 
@@ -282,6 +503,7 @@ public class TableFactory {
 
 	public void close(String table) {
 		try {
+			flush(table);
 			this.psMap.get(table).close();
 		} catch (Exception e) {
 		}
@@ -319,6 +541,29 @@ public class TableFactory {
 
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Defines the number of records which are sent to the database in one batch.
+	 * With a value of 1 each record is executed immediately.
+	 * 
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Provides the number of inserted, existing and failed records
+	 * 
+	 * @return
+	 */
+	public LoadMetrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * Determines if the database exists
 	 * @param name
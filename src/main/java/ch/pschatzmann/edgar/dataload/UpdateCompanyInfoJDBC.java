@@ -25,6 +25,12 @@ public class UpdateCompanyInfoJDBC {
 
 		} catch (Exception ex) {
 			LOG.error(ex, ex);
+		} finally {
+			try {
+				tableFactory.close();
+			} catch (Exception ex) {
+				LOG.error(ex, ex);
+			}
 		}
 	}
 
@@ -31,6 +31,16 @@ public class UpdateMonths {
 			}
 	        LOG.info("---END---");
 
+		} catch (Exception ex) {
+			LOG.error(ex, ex);
+		} finally {
+			close();
+		}
+	}
+
+	private static void close() {
+		try {
+			tableFactory.close();
 		} catch (Exception ex) {
 			LOG.error(ex, ex);
 		}
@@ -63,6 +73,7 @@ public class UpdateMonths {
                 }
             }
         }
+        rs.getStatement().close();
         LOG.info("---");
 
 	}
@@ -16,6 +16,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import ch.pschatzmann.edgar.base.FactFilter;
 import ch.pschatzmann.edgar.base.XBRL;
 
 /**
@@ -163,6 +164,21 @@ public class FilingEntry implements Serializable, Comparable<FilingEntry> {
 		return this.xbrl;
 	}
 
+	/**
+	 * Loads the XBRL with the indicated selection of values. The result is not
+	 * cached.
+	 * 
+	 * @param filter
+	 * @return
+	 */
+	public Optional<XBRL> getXBRL(FactFilter filter) {
+		XBRL xbrl = new XBRL();
+		xbrl.setCompanyInfo(this.ci);
+		xbrl.setFactFilter(filter);
+		this.loadXBRL(xbrl);
+		return xbrl.isEmpty() ? Optional.empty() : Optional.of(xbrl);
+	}
+
 	@Override
 	public int compareTo(FilingEntry o) {
 		int result = this.getFilingDate().compareTo(o.getFilingDate());
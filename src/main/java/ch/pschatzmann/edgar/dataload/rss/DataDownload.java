@@ -1,11 +1,10 @@
 package ch.pschatzmann.edgar.dataload.rss;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
@@ -33,7 +32,8 @@ import ch.pschatzmann.edgar.base.errors.XBRLException;
 import ch.pschatzmann.edgar.utils.Utils;
 
 /**
- * Logic to download the data from Edgar
+ * Logic to download the data from Edgar. All requests are executed with the
+ * shared HttpDownloader, so that the rate limit of Edgar is respected.
  * 
  * @author pschatzmann
  *
@@ -41,6 +41,8 @@ import ch.pschatzmann.edgar.utils.Utils;
 public class DataDownload {
 	private static final Logger LOG = Logger.getLogger(DataDownload.class);
 	private String uriXbrl;
+	private HttpDownloader downloader = HttpDownloader.getInstance();
+	private boolean refresh = Boolean.parseBoolean(Utils.getProperty("downloadRefresh", "false"));
 
 	public DataDownload(String url) {
 		this.uriXbrl = url;
@@ -55,9 +57,8 @@ public class DataDownload {
 	public boolean isValidDownloadFile(File zip) {
 		boolean result = false;
 		if (zip.exists()) {
-			ZipFile zf;
-			try {
-				zf = new ZipFile(zip);
+			// the file must be closed so that it can be replaced
+			try (ZipFile zf = new ZipFile(zip)) {
 				result = true;
 			} catch (Exception ex) {
 			}
@@ -65,6 +66,18 @@ public class DataDownload {
 		return result;
 	}
 
+	/**
+	 * Determines if the file needs to be loaded: this is the case if we do not
+	 * have a valid file yet. With refresh an existing zip file is checked as
+	 * well, but it is only downloaded again if it was modified on the server.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public boolean isDownloadRequired(File file) {
+		return !isValidDownloadFile(file) || (refresh && this.uriXbrl.endsWith(".zip"));
+	}
+
 	/**
 	 * Loads the data from Edgar to the indicated output file
 	 * 
@@ -73,7 +86,8 @@ public class DataDownload {
 	 * @throws DataLoadException
 	 */
 	public void load(File outputFile) throws XBRLException, DataLoadException {
-		if (outputFile.exists()) {
+		// a valid zip file is only replaced if it was modified on the server
+		if (outputFile.exists() && !(this.uriXbrl.endsWith(".zip") && isValidDownloadFile(outputFile))) {
 			outputFile.delete();
 		}
 
@@ -96,11 +110,11 @@ public class DataDownload {
 		File parent = outputFolder.getParentFile();
 		if (parent==null || parent.exists() || parent.mkdirs()) {
 			try {
-				URL website = new URL(this.uriXbrl.replace("http://", "https://"));
-				InputStream in = website.openStream();
-				Files.copy(in, outputFolder.toPath(), StandardCopyOption.REPLACE_EXISTING);
-				in.close();
-				LOG.info("File created :" + outputFolder.getAbsolutePath());
+				if (downloader.download(toSecure(this.uriXbrl), outputFolder)) {
+					LOG.info("File created :" + outputFolder.getAbsolutePath());
+				} else {
+					LOG.info("File not modified :" + outputFolder.getAbsolutePath());
+				}
 			} catch (Exception ex) {
 				throw new XBRLException(ex);
 			}
@@ -111,51 +125,65 @@ public class DataDownload {
 	}
 
 	/**
-	 * Creates a zip file if the link is a htm file
+	 * Creates a zip file if the link is a htm file. The documents are streamed
+	 * into a temporary zip file which is renamed when all documents are
+	 * available.
 	 * 
 	 * @param ouputZipFile
 	 * @throws DataLoadException
 	 */
 	private void loadHttp(File ouputZipFile) throws DataLoadException {
+		File tmp = new File(ouputZipFile.getPath() + ".part");
 		try {
 			File parent = ouputZipFile.getParentFile();
 			if (parent==null || parent.exists() || parent.mkdirs()) {
 				String urlStr = this.getUriXbrl();
-				urlStr = urlStr.replace("http://", "https://");
+				urlStr = toSecure(urlStr);
 				String fileName = urlStr.substring(urlStr.lastIndexOf("/") + 1, urlStr.length());
-				ouputZipFile.createNewFile();
-				ZipOutputStream out = new ZipOutputStream(new FileOutputStream(ouputZipFile));
-				// get all files which are in /FilingSummary/InputFiles/File
-				for (String xmlFileName : getDocuments(urlStr,fileName)) {
-					String contentURL = urlStr.replaceAll(fileName, xmlFileName);
-					LOG.info("adding to zip " + contentURL);
-					URL source = new URL(contentURL);
-					ZipEntry e = new ZipEntry(xmlFileName);
-					out.putNextEntry(e);
-					byte[] data = Utils.urlToByteArray(source).toByteArray();
-					out.write(data, 0, data.length);
-					out.closeEntry();
+				try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(tmp))) {
+					// get all files which are in /FilingSummary/InputFiles/File
+					for (String xmlFileName : getDocuments(urlStr,fileName)) {
+						String contentURL = urlStr.replaceAll(fileName, xmlFileName);
+						LOG.info("adding to zip " + contentURL);
+						ZipEntry e = new ZipEntry(xmlFileName);
+						out.putNextEntry(e);
+						downloader.copy(contentURL, out);
+						out.closeEntry();
+					}
 				}
-				out.close();
+				Files.move(tmp.toPath(), ouputZipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 				LOG.info("File created :" + ouputZipFile.getAbsolutePath());
 			}
 		} catch (Exception ex) {
 			throw new DataLoadException(ex);
+		} finally {
+			tmp.delete();
 		}
 	}
 
+	/**
+	 * Edgar is only available with https. Other servers (e.g. a local mirror)
+	 * are accessed with the indicated protocol
+	 * 
+	 * @param url
+	 * @return
+	 */
+	private String toSecure(String url) {
+		return url.startsWith("http://www.sec.gov/") ? url.replace("http://", "https://") : url;
+	}
+
 	private String getUriXbrl() {
 		return this.uriXbrl;
 	}
 
 	private List<String> getDocuments(String urlStr, String fileName) throws IOException, ParserConfigurationException, SAXException {
-		URL index = new URL(urlStr.replaceAll(fileName, "FilingSummary.xml"));
+		String index = urlStr.replaceAll(fileName, "FilingSummary.xml");
 		List<String> result = new ArrayList();
-		if (exists(index)) {
+		if (downloader.exists(index)) {
 			// parse xml
 			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
 			DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-			Document doc = dBuilder.parse(index.openStream());
+			Document doc = dBuilder.parse(new ByteArrayInputStream(downloader.getBytes(index)));
 
 			NodeList nList = doc.getElementsByTagName("File");
 			for (int temp = 0; temp < nList.getLength(); temp++) {
@@ -165,7 +193,8 @@ public class DataDownload {
 			}
 		} else {
 			// parse html
-			org.jsoup.nodes.Document doc = Jsoup.connect(urlStr).get();
+			String html = new String(downloader.getBytes(urlStr), StandardCharsets.UTF_8);
+			org.jsoup.nodes.Document doc = Jsoup.parse(html, urlStr);
 			Elements links = doc.select("a[href]"); 
 			Iterator<Element> it = links.iterator();
 			while(it.hasNext()) {
@@ -181,21 +210,28 @@ public class DataDownload {
 
 		return result;
 	}
-	
-	private boolean exists(URL url) {
-		boolean result = false;
-		HttpURLConnection huc;
-		try {
-			huc = ( HttpURLConnection )  url.openConnection ();
-			huc.setInstanceFollowRedirects(true);
-			huc.setRequestMethod ("GET"); 
-			huc.connect () ; 
-			result = huc.getResponseCode() == 200 ;
-
-		} catch (IOException e) {
-			LOG.warn(e,e);
-		} 
-		return result;
+
+	public boolean isRefresh() {
+		return refresh;
+	}
+
+	/**
+	 * Defines if existing zip files are checked for changes on the server (by
+	 * default this is defined by the property downloadRefresh)
+	 * 
+	 * @param refresh
+	 */
+	public void setRefresh(boolean refresh) {
+		this.refresh = refresh;
+	}
+
+	/**
+	 * Defines the downloader (by default the shared instance is used)
+	 * 
+	 * @param downloader
+	 */
+	public void setDownloader(HttpDownloader downloader) {
+		this.downloader = downloader;
 	}
 
 }
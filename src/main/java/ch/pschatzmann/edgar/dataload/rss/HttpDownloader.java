@@ -0,0 +1,357 @@
+package ch.pschatzmann.edgar.dataload.rss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import ch.pschatzmann.edgar.utils.RateLimiter;
+import ch.pschatzmann.edgar.utils.Utils;
+
+/**
+ * Http access to Edgar which is shared by all download threads: all requests
+ * are throttled by a common token bucket (Edgar accepts at most 10 requests
+ * per second) and the number of parallel requests is limited.
+ *
+ * The responses are always read completely, so that the JVM keeps the
+ * connections alive and reuses them for the next requests. Files are streamed
+ * to a temporary file which replaces the target only when the download was
+ * successful. An existing file is only downloaded again if it was modified on
+ * the server.
+ *
+ * The downloader is configured with the following properties:
+ * downloadRequestsPerSecond, downloadBurst, downloadConcurrency,
+ * downloadTimeout (ms), downloadRetries and downloadUserAgent.
+ *
+ * Edgar requires that the User-Agent declares the company name and a contact
+ * email address (e.g. "Sample Company AdminContact@sample.com"), so the
+ * property downloadUserAgent must be defined for requests to sec.gov.
+ * Otherwise these requests fail with an IOException. Other servers (e.g. a
+ * local mirror) are accessed with the default User-Agent smart-edgar.
+ *
+ * @author pschatzmann
+ *
+ */
+public class HttpDownloader {
+	private static final Logger LOG = Logger.getLogger(HttpDownloader.class);
+	private static HttpDownloader instance;
+	private RateLimiter rateLimiter;
+	private Semaphore permits;
+	private int timeout = Integer.parseInt(Utils.getProperty("downloadTimeout", "60000"));
+	private int retries = Integer.parseInt(Utils.getProperty("downloadRetries", "3"));
+	private static final String DEFAULT_USER_AGENT = "smart-edgar";
+	private String userAgent = Utils.getProperty("downloadUserAgent", "");
+	private AtomicLong requests = new AtomicLong();
+	private AtomicLong notModified = new AtomicLong();
+	private AtomicLong retried = new AtomicLong();
+	private AtomicLong bytes = new AtomicLong();
+	private AtomicLong waitTime = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param requestsPerSecond
+	 * @param burst
+	 *            number of requests which can be sent w/o delay
+	 * @param concurrency
+	 *            max number of parallel requests
+	 */
+	public HttpDownloader(double requestsPerSecond, int burst, int concurrency) {
+		this.rateLimiter = new RateLimiter(requestsPerSecond, burst);
+		this.permits = new Semaphore(concurrency, true);
+	}
+
+	/**
+	 * Returns the downloader which is shared by all threads. It is defined by
+	 * the download properties.
+	 *
+	 * @return
+	 */
+	public static synchronized HttpDownloader getInstance() {
+		if (instance == null) {
+			instance = new HttpDownloader(Double.parseDouble(Utils.getProperty("downloadRequestsPerSecond", "10")),
+					Integer.parseInt(Utils.getProperty("downloadBurst", "1")),
+					Integer.parseInt(Utils.getProperty("downloadConcurrency", "4")));
+		}
+		return instance;
+	}
+
+	/**
+	 * Checks with a HEAD request if the url exists
+	 *
+	 * @param url
+	 * @return
+	 */
+	public boolean exists(String url) {
+		try {
+			return execute(url, "HEAD", 0, null) == HttpURLConnection.HTTP_OK;
+		} catch (IOException ex) {
+			LOG.warn("Could not access " + url + ": " + ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Downloads the url into the file. If the file exists it is only replaced if
+	 * it has been modified on the server.
+	 *
+	 * @param url
+	 * @param file
+	 * @return false if the file was not modified
+	 * @throws IOException
+	 */
+	public boolean download(String url, File file) throws IOException {
+		File tmp = new File(file.getPath() + ".part");
+		long[] lastModified = { file.exists() ? file.lastModified() : 0 };
+		try {
+			int status = execute(url, "GET", lastModified[0], (connection, in) -> {
+				try (OutputStream out = new FileOutputStream(tmp)) {
+					copy(in, out);
+				}
+				lastModified[0] = connection.getLastModified();
+			});
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				return false;
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			if (lastModified[0] > 0) {
+				// so that the next request can check if the file was modified
+				file.setLastModified(lastModified[0]);
+			}
+			return true;
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Streams the content of the url to the output stream
+	 *
+	 * @param url
+	 * @param out
+	 * @throws IOException
+	 */
+	public void copy(String url, OutputStream out) throws IOException {
+		execute(url, "GET", 0, (connection, in) -> copy(in, out));
+	}
+
+	/**
+	 * Provides the content of the url
+	 *
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	public byte[] getBytes(String url) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		copy(url, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Executes the request: we wait for a free slot and for the rate limiter.
+	 * Requests which are rejected because of the load (429, 503) are repeated.
+	 *
+	 * @param url
+	 * @param method
+	 * @param ifModifiedSince
+	 * @param body
+	 *            processes the content (only for 200)
+	 * @return http status (200, 304 or the status of a HEAD request)
+	 * @throws IOException
+	 */
+	protected int execute(String url, String method, long ifModifiedSince, Body body) throws IOException {
+		String agent = getUserAgent(url);
+		try {
+			permits.acquire();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		}
+		try {
+			for (int attempt = 0;; attempt++) {
+				waitTime.addAndGet(rateLimiter.acquire());
+				requests.incrementAndGet();
+				HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+				connection.setRequestMethod(method);
+				connection.setRequestProperty("User-Agent", agent);
+				connection.setRequestProperty("Accept-Encoding", "identity");
+				connection.setConnectTimeout(timeout);
+				connection.setReadTimeout(timeout);
+				if (ifModifiedSince > 0) {
+					connection.setIfModifiedSince(ifModifiedSince);
+				}
+				int status = connection.getResponseCode();
+				if (status == HttpURLConnection.HTTP_OK) {
+					try (InputStream in = connection.getInputStream()) {
+						if (body != null) {
+							body.accept(connection, in);
+						}
+						// we need to consume the response to keep the connection alive
+						consume(in);
+					}
+					return status;
+				}
+				consume(connection.getErrorStream());
+				if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					notModified.incrementAndGet();
+					return status;
+				}
+				boolean overloaded = status == 429 || status == HttpURLConnection.HTTP_UNAVAILABLE;
+				if ("HEAD".equals(method) && !overloaded) {
+					return status;
+				}
+				if (overloaded && attempt < retries) {
+					long delay = getRetryDelay(connection, attempt);
+					LOG.warn("Request was rejected with " + status + " - retrying " + url + " in " + delay + " ms");
+					retried.incrementAndGet();
+					Thread.sleep(delay);
+					continue;
+				}
+				throw new IOException("Request failed with status " + status + ": " + url);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Determines the User-Agent for the url. Edgar rejects requests w/o a
+	 * declared User-Agent, so we fail if it has not been defined.
+	 *
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	protected String getUserAgent(String url) throws IOException {
+		if (!Utils.isEmpty(userAgent)) {
+			return userAgent;
+		}
+		String host = new URL(url).getHost().toLowerCase();
+		if (host.equals("sec.gov") || host.endsWith(".sec.gov")) {
+			throw new IOException(
+					"Edgar requires a User-Agent with the company name and a contact email: please define the property downloadUserAgent");
+		}
+		return DEFAULT_USER_AGENT;
+	}
+
+	private long getRetryDelay(HttpURLConnection connection, int attempt) {
+		try {
+			return Long.parseLong(connection.getHeaderField("Retry-After")) * 1000;
+		} catch (Exception ex) {
+			return 1000L << attempt;
+		}
+	}
+
+	private void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[1 << 16];
+		int len;
+		while ((len = in.read(buffer)) > 0) {
+			out.write(buffer, 0, len);
+			bytes.addAndGet(len);
+		}
+	}
+
+	private void consume(InputStream in) throws IOException {
+		if (in != null) {
+			try {
+				byte[] buffer = new byte[4096];
+				while (in.read(buffer) >= 0) {
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getNotModified() {
+		return notModified.get();
+	}
+
+	public long getRetried() {
+		return retried.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * Total time in ms which was spent waiting for the rate limiter
+	 *
+	 * @return
+	 */
+	public long getWaitTime() {
+		return waitTime.get();
+	}
+
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Defines the connect and read timeout in ms
+	 *
+	 * @param timeout
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	public int getRetries() {
+		return retries;
+	}
+
+	public void setRetries(int retries) {
+		this.retries = retries;
+	}
+
+	public String getUserAgent() {
+		return userAgent;
+	}
+
+	/**
+	 * Defines the User-Agent. Edgar expects the company name and a contact
+	 * email address.
+	 *
+	 * @param userAgent
+	 */
+	public void setUserAgent(String userAgent) {
+		this.userAgent = userAgent;
+	}
+
+	@Override
+	public String toString() {
+		return "requests=" + getRequests() + ", notModified=" + getNotModified() + ", retried=" + getRetried()
+				+ ", bytes=" + getBytes() + ", wait=" + getWaitTime() + " ms, " + rateLimiter;
+	}
+
+	/**
+	 * Processing of the response content
+	 */
+	protected interface Body {
+		void accept(HttpURLConnection connection, InputStream in) throws IOException;
+	}
+
+}
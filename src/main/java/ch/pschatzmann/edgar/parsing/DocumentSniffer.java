@@ -0,0 +1,159 @@
+package ch.pschatzmann.edgar.parsing;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Determines the kind of a html document by looking at a small window at the
+ * start of the document. The document itself is not buffered: the returned
+ * input stream provides the window followed by the remaining content of the
+ * original stream (which is not closed). A byte order mark and the white space in front of the
+ * document are removed, so that the SAX parser accepts a xml prolog which is
+ * not on the first line.
+ *
+ * @author pschatzmann
+ *
+ */
+public class DocumentSniffer {
+	public enum Kind {
+		xml, ixbrl, html, unknown
+	}
+
+	private static final int WINDOW_SIZE = 2048;
+	private Kind kind = Kind.unknown;
+	private InputStream inputStream;
+	private String start = "";
+
+	/**
+	 * Constructor
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	public DocumentSniffer(InputStream in) throws IOException {
+		byte[] window = new byte[WINDOW_SIZE];
+		int len = 0;
+		int read = 0;
+		while (len < window.length && (read = in.read(window, len, window.length - len)) > 0) {
+			len += read;
+		}
+		int pos = 0;
+		if (len >= 3 && (window[0] & 0xFF) == 0xEF && (window[1] & 0xFF) == 0xBB && (window[2] & 0xFF) == 0xBF) {
+			pos = 3;
+		}
+		while (pos < len && Character.isWhitespace(window[pos])) {
+			pos++;
+		}
+		String text = new String(window, pos, len - pos, StandardCharsets.UTF_8);
+		int eol = text.indexOf('\n');
+		this.start = (eol < 0 ? text : text.substring(0, eol)).trim();
+		this.kind = getKind(text.toLowerCase());
+		this.inputStream = new WindowInputStream(in, window, pos, len);
+	}
+
+	protected Kind getKind(String text) {
+		if (text.startsWith("<?xml")) {
+			return Kind.xml;
+		}
+		if (text.startsWith("<html")) {
+			// inline xbrl w/o prolog: the namespace is declared on the html element
+			return text.contains("xmlns:ix=") ? Kind.ixbrl : Kind.html;
+		}
+		if (text.startsWith("<!doctype html")) {
+			return Kind.html;
+		}
+		return Kind.unknown;
+	}
+
+	/**
+	 * Returns true if the document can be parsed by the SAX parser
+	 *
+	 * @return
+	 */
+	public boolean isXML() {
+		return kind == Kind.xml || kind == Kind.ixbrl;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Input stream which provides the (trimmed) document
+	 *
+	 * @return
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * Returns the first line of the document
+	 *
+	 * @return
+	 */
+	public String getStart() {
+		return start;
+	}
+
+	/**
+	 * Provides the bytes of the window followed by the remaining bytes of the
+	 * original stream
+	 */
+	private static class WindowInputStream extends FilterInputStream {
+		private byte[] window;
+		private int pos;
+		private int len;
+
+		WindowInputStream(InputStream in, byte[] window, int pos, int len) {
+			super(in);
+			this.window = window;
+			this.pos = pos;
+			this.len = len;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return pos < len ? window[pos++] & 0xFF : in.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int n) throws IOException {
+			if (pos < len) {
+				int count = Math.min(n, len - pos);
+				System.arraycopy(window, pos, b, off, count);
+				pos += count;
+				return count;
+			}
+			return in.read(b, off, n);
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (pos < len) {
+				long count = Math.min(n, len - pos);
+				pos += count;
+				return count;
+			}
+			return in.skip(n);
+		}
+
+		@Override
+		public int available() throws IOException {
+			return len - pos + in.available();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+			// the original stream is closed by the caller
+		}
+	}
+
+}
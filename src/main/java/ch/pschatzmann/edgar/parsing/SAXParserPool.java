@@ -0,0 +1,127 @@
+package ch.pschatzmann.edgar.parsing;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+
+import ch.pschatzmann.edgar.utils.Utils;
+
+/**
+ * Thread safe pool of configured SAX parsers which is shared by all XBRL
+ * instances. The lookup of the factory and the setup of a new parser is
+ * relatively expensive, so we reset and reuse the parsers.
+ *
+ * @author pschatzmann
+ *
+ */
+public class SAXParserPool {
+	private static final Logger LOG = Logger.getLogger(SAXParserPool.class);
+	private static SAXParserPool instance;
+	private SAXParserFactory factory;
+	private BlockingQueue<SAXParser> idle;
+	private AtomicLong createdCount = new AtomicLong();
+	private AtomicLong borrowedCount = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxIdle
+	 *            max number of parsers which are kept for reuse
+	 */
+	public SAXParserPool(int maxIdle) {
+		this.idle = new ArrayBlockingQueue(Math.max(1, maxIdle));
+	}
+
+	/**
+	 * Returns the shared pool. The number of idle parsers can be defined with
+	 * the saxParserPoolSize property.
+	 *
+	 * @return
+	 */
+	public static synchronized SAXParserPool getInstance() {
+		if (instance == null) {
+			int defaultSize = Runtime.getRuntime().availableProcessors() * 2;
+			instance = new SAXParserPool(Integer.parseInt(Utils.getProperty("saxParserPoolSize", "" + defaultSize)));
+		}
+		return instance;
+	}
+
+	/**
+	 * Provides a parser from the pool or creates a new one if none is available
+	 *
+	 * @return
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	public SAXParser borrow() throws ParserConfigurationException, SAXException {
+		borrowedCount.incrementAndGet();
+		SAXParser result = idle.poll();
+		if (result == null) {
+			result = newSAXParser();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the parser to the pool. Parsers which can not be reset are
+	 * discarded.
+	 *
+	 * @param parser
+	 */
+	public void release(SAXParser parser) {
+		try {
+			parser.reset();
+			idle.offer(parser);
+		} catch (Exception ex) {
+			LOG.warn("The parser could not be reset: " + ex);
+		}
+	}
+
+	protected synchronized SAXParser newSAXParser() throws ParserConfigurationException, SAXException {
+		if (factory == null) {
+			factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			factory.setXIncludeAware(true);
+			factory.setValidating(false);
+			factory.setFeature("http://apache.org/xml/features/honour-all-schemaLocations", true);
+			factory.setFeature("http://apache.org/xml/features/continue-after-fatal-error", true);
+		}
+		createdCount.incrementAndGet();
+		return factory.newSAXParser();
+	}
+
+	/**
+	 * Number of parsers which were created
+	 *
+	 * @return
+	 */
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	/**
+	 * Number of parse requests which were served by the pool
+	 *
+	 * @return
+	 */
+	public long getBorrowedCount() {
+		return borrowedCount.get();
+	}
+
+	/**
+	 * Number of parsers which are available for reuse
+	 *
+	 * @return
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+}
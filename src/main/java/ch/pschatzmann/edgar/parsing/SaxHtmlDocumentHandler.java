@@ -1,6 +1,7 @@
 package ch.pschatzmann.edgar.parsing;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Stack;
 
 import org.apache.log4j.Logger;
@@ -11,6 +12,8 @@ import org.xml.sax.helpers.DefaultHandler;
 import ch.pschatzmann.edgar.base.Fact;
 import ch.pschatzmann.edgar.base.Fact.Attribute;
 import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.base.FactFilter;
+import ch.pschatzmann.edgar.base.FactStream;
 import ch.pschatzmann.edgar.base.FactValue;
 import ch.pschatzmann.edgar.base.IndexAPI;
 import ch.pschatzmann.edgar.base.XBRL;
@@ -25,13 +28,21 @@ import ch.pschatzmann.edgar.utils.Utils;
 
 public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializable {
 	private static final Logger LOG = Logger.getLogger(SaxHtmlDocumentHandler.class);
+	// marks the nodes which are skipped because of the FactFilter
+	private static final Fact SKIPPED = new Fact(null, Type.UNDEFINED, 0, 0);
 	private StringBuffer value = new StringBuffer();
 	private Stack<Fact> factStack = new Stack();
 	private IndexAPI index;
 	private Fact fact;
+	private Fact root;
 	private int level = 0;
 	//private boolean ignoreHtml = true;
 	private XBRL xbrl;
+	private FactStream stream;
+	private FactFilter filter;
+	private boolean skipHtml;
+	// levels of the open html nodes which are skipped
+	private BitSet skippedHtml = new BitSet();
 	private long line = 0;
 
 	/**
@@ -42,10 +53,31 @@ public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializab
 	 * @param isFactFile
 	 */
 	public SaxHtmlDocumentHandler(XBRL xbrl, Fact factRoot, boolean isFactFile) {
+		setup(xbrl, factRoot, isFactFile);
+	}
+
+	/**
+	 * (Re)initializes the handler so that it can be reused for the next
+	 * document
+	 * 
+	 * @param xbrl
+	 * @param factRoot
+	 * @param isFactFile
+	 */
+	public void setup(XBRL xbrl, Fact factRoot, boolean isFactFile) {
 		this.xbrl = xbrl;
 		this.fact = factRoot;
+		this.root = factRoot;
 		this.index = xbrl.getIndex();
+		this.stream = xbrl.getFactStream();
+		this.filter = xbrl.getFactFilter();
+		this.skipHtml = xbrl.isSkipHtml();
+		this.skippedHtml.clear();
 		//this.ignoreHtml = xbrl.isIgnoreHtml();
+		this.level = 0;
+		this.line = 0;
+		this.value.setLength(0);
+		factStack.clear();
 		factStack.push(factRoot);
 	}
 
@@ -56,6 +88,21 @@ public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializab
 		value.setLength(0);
 
 		Type type = getType(localName, uri);
+		boolean skipping = factStack.peek() == SKIPPED;
+		if (skipping && (type != Type.value || attributes.getValue("name") == null)
+				|| type == Type.value && !isCandidate(attributes)) {
+			// the value and its html children are not needed: the values which
+			// are nested in a skipped text block are processed
+			factStack.push(SKIPPED);
+			level++;
+			return;
+		}
+		if (type == Type.html && skipHtml && !isTextNeeded()) {
+			// the html node does not provide any text for a value
+			skippedHtml.set(level);
+			level++;
+			return;
+		}
 		switch (type) {
 		case value:
 			newfact = processValue(uri, qName, attributes);
@@ -74,21 +121,63 @@ public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializab
 
 	}
 
+	/**
+	 * The text of the html nodes is only needed in values, continuations and
+	 * footnotes
+	 * 
+	 * @return
+	 */
+	private boolean isTextNeeded() {
+		Type type = current().getType();
+		return type == Type.value || type == Type.continuation || type == Type.footnote || type == Type.html;
+	}
+
+	private boolean isCandidate(Attributes attributes) {
+		String name = attributes.getValue("name");
+		return !isFiltered(name) || filter.isCandidate(xbrl, Utils.lastPath(name),
+				attributes.getValue(Attribute.contextRef.name()), attributes.getValue(Attribute.unitRef.name()));
+	}
+
+	private boolean isFiltered(String name) {
+		return filter != null && name != null && !FactStream.isDocumentInformation(name);
+	}
+
+	/**
+	 * With a filter the values and contexts are kept back until they are
+	 * complete
+	 * 
+	 * @param fact
+	 * @return
+	 */
+	private boolean isKeptBack(Fact fact) {
+		return stream == null && fact.getId() < 0;
+	}
+
 	private Fact processFact(Attributes attributes, Type type) {
 		Fact newfact;
-		newfact = new Fact(xbrl, type, level, line);
+		boolean keptBack = stream == null && (filter != null && type == Type.context || isKeptBack(fact));
+		newfact = new Fact(keptBack ? null : xbrl, type, level, line);
 		for (int i = 0; i < attributes.getLength(); i++) {
 			String name = attributes.getLocalName(i);
 			String value = attributes.getValue(i);
 			newfact.put(name, value);
 		}
-		createRelationship(newfact, fact);
+		if (!keptBack || isKeptBack(fact)) {
+			createRelationship(newfact, fact);
+		}
+		if (type == Type.continuation && !keptBack) {
+			xbrl.addContinuation(newfact);
+		}
 		return newfact;
 	}
 
 	private Fact processHtml(String qName, Attributes attributes) {
 		Fact newfact;
-		newfact = new HtmlFact(xbrl, Type.html, level, line);
+		if (stream != null) {
+			// in streaming mode we do not keep the html nodes
+			return new HtmlFact(null, Type.html, level, line);
+		}
+		newfact = new HtmlFact(isKeptBack(fact) ? null : xbrl, Type.html, level, line);
 		newfact.put("tag", qName);
 		for (int i = 0; i < attributes.getLength(); i++) {
 			String name = attributes.getLocalName(i);
@@ -101,7 +190,11 @@ public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializab
 
 	private Fact processValue(String uri, String qName, Attributes attributes) {
 		Fact newfact;
-		newfact = new FactValue(xbrl, Type.value, level, line);
+		// in streaming mode the values are not kept in the xbrl
+		boolean detached = stream != null && !FactStream.isDocumentInformation(attributes.getValue("name"));
+		boolean keptBack = stream == null && (isFiltered(attributes.getValue("name")) || isKeptBack(fact));
+		detached = detached || keptBack;
+		newfact = detached ? new Fact(null, Type.value, level, line) : new FactValue(xbrl, Type.value, level, line);
 		for (int i = 0; i < attributes.getLength(); i++) {
 			String name = attributes.getLocalName(i);
 			String value = attributes.getValue(i);
@@ -115,7 +208,9 @@ public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializab
 			newfact.put("uri", uri);
 			int pos = qName.indexOf(":");
 			newfact.put("prefix", qName.substring(0, Math.max(0, pos)));
-			createRelationship(newfact, fact);
+			if (!detached || isKeptBack(fact)) {
+				createRelationship(newfact, fact);
+			}
 		}
 		return newfact;
 	}
@@ -136,7 +231,25 @@ public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializab
 		return result;
 	}
 
+	/**
+	 * Determines the current node: the skipped nodes are ignored
+	 * 
+	 * @return
+	 */
+	private Fact current() {
+		for (int j = factStack.size() - 1; j >= 0; j--) {
+			if (factStack.get(j) != SKIPPED) {
+				return factStack.get(j);
+			}
+		}
+		return root;
+	}
+
 	private void createRelationship(Fact fact, Fact parent) {
+		if (stream != null && parent.getId() < 0) {
+			// the parent html node was not kept
+			parent = root;
+		}
 		parent.addChild(fact);
 		fact.addParent(parent);
 	}
@@ -144,6 +257,16 @@ public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializab
 	@Override
 	public void endElement(String uri, String localName, String qName) throws SAXException {
 		level--;
+		if (skippedHtml.get(level)) {
+			skippedHtml.clear(level);
+			value.setLength(0);
+			return;
+		}
+		if (factStack.peek() == SKIPPED) {
+			factStack.pop();
+			value = new StringBuffer();
+			return;
+		}
 		String str = value.toString().trim();
 		if (!str.isEmpty()) {
 			String name = localName;
@@ -158,17 +281,36 @@ public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializab
 			IValueFormatter f = this.xbrl.getValueFormatter(fact.getDataType(str));
 			fact.put(name, f.format(str));
 			fact.index();
-			
+
+			if (fact.getType() == Type.value && "DocumentType".equalsIgnoreCase(fact.getParameterName())
+					&& Utils.isEmpty(xbrl.getFilingInfo().getForm())) {
+				xbrl.getFilingInfo().setForm(str);
+			}
+		}
+		if (stream != null && fact.getType() == Type.value
+				&& (filter == null || fact.getId() >= 0 || filter.isAccepted(xbrl, fact))) {
+			stream.add(fact);
 		}
 		factStack.pop();
-		fact = factStack.peek();
-				
+		Fact parent = current();
+		if (isKeptBack(fact) && !isKeptBack(parent)) {
+			if (fact.getType() == Type.context) {
+				xbrl.addPendingContext(fact);
+			} else if (filter.isAccepted(xbrl, fact)) {
+				xbrl.attach(fact, parent);
+			}
+		}
+		fact = parent;
+
 		value = new StringBuffer();
 	}
 
 
 	@Override
 	public void characters(char ch[], int start, int length) throws SAXException {
+		if (factStack.peek() == SKIPPED) {
+			return;
+		}
 		value.append(new String(ch, start, length));
 	}
 
@@ -177,6 +319,7 @@ public class SaxHtmlDocumentHandler extends DefaultHandler implements Serializab
 		value.setLength(0);
 		factStack.clear();
 		index = null;
+		stream = null;
 		xbrl = null;
 	}
 	
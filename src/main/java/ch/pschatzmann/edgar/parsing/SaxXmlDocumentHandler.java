@@ -11,6 +11,8 @@ import org.xml.sax.helpers.DefaultHandler;
 import ch.pschatzmann.edgar.base.Fact;
 import ch.pschatzmann.edgar.base.Fact.Attribute;
 import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.base.FactFilter;
+import ch.pschatzmann.edgar.base.FactStream;
 import ch.pschatzmann.edgar.base.FactValue;
 import ch.pschatzmann.edgar.base.IndexAPI;
 import ch.pschatzmann.edgar.base.XBRL;
@@ -32,6 +34,9 @@ public class SaxXmlDocumentHandler extends DefaultHandler implements Serializabl
 	private int level = 0;
 	private boolean isFact = false;
 	private XBRL xbrl;
+	private FactStream stream;
+	private FactFilter filter;
+	private int skipped = 0;
 	private long line = 0;
 
 	/**
@@ -42,19 +47,56 @@ public class SaxXmlDocumentHandler extends DefaultHandler implements Serializabl
 	 * @param isFactFile
 	 */
 	public SaxXmlDocumentHandler(XBRL xbrl, Fact factRoot, boolean isFactFile) {
+		setup(xbrl, factRoot, isFactFile);
+	}
+
+	/**
+	 * (Re)initializes the handler so that it can be reused for the next
+	 * document
+	 * 
+	 * @param xbrl
+	 * @param factRoot
+	 * @param isFactFile
+	 */
+	public void setup(XBRL xbrl, Fact factRoot, boolean isFactFile) {
 		this.xbrl = xbrl;
 		this.fact = factRoot;
 		this.index = xbrl.getIndex();
+		this.stream = xbrl.getFactStream();
+		this.filter = xbrl.getFactFilter();
 		this.isFact = isFactFile;
+		this.level = 0;
+		this.skipped = 0;
+		this.line = 0;
+		this.value.setLength(0);
+		factStack.clear();
 		factStack.push(factRoot);
 	}
 
 	@Override
 	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
 		line++;
+		if (skipped > 0) {
+			skipped++;
+			return;
+		}
 		value.setLength(0);
 		Type type = getType(localName, level, isFact);
-		Fact newfact = type == Type.value ? new FactValue(xbrl, type, level, line) : new Fact(xbrl, type, level, line);
+		boolean filtered = filter != null && type == Type.value && !FactStream.isDocumentInformation(uri);
+		if (filtered && !filter.isCandidate(xbrl, localName, attributes.getValue(Attribute.contextRef.name()),
+				attributes.getValue(Attribute.unitRef.name()))) {
+			// the value and its children are not needed
+			skipped = 1;
+			return;
+		}
+		// with a filter the values and contexts are kept back until they are complete
+		boolean keptBack = stream == null
+				&& (filtered || filter != null && type == Type.context || isKeptBack(fact));
+		// in streaming mode the values are not kept in the xbrl
+		boolean detached = keptBack
+				|| stream != null && type == Type.value && !FactStream.isDocumentInformation(uri);
+		Fact newfact = detached ? new Fact(null, type, level, line)
+				: type == Type.value ? new FactValue(xbrl, type, level, line) : new Fact(xbrl, type, level, line);
 
 		for (int i = 0; i < attributes.getLength(); i++) {
 			String name = attributes.getLocalName(i);
@@ -70,7 +112,9 @@ public class SaxXmlDocumentHandler extends DefaultHandler implements Serializabl
 			newfact.put("prefix", qName.contains(":") ? qName.substring(0, qName.indexOf(":")) : qName);
 		}
 
-		createRelationship(newfact, fact);
+		if (!detached || isKeptBack(fact)) {
+			createRelationship(newfact, fact);
+		}
 		factStack.push(newfact);
 		fact = newfact;
 		level++;
@@ -96,6 +140,10 @@ public class SaxXmlDocumentHandler extends DefaultHandler implements Serializabl
 		return result;
 	}
 
+	private boolean isKeptBack(Fact fact) {
+		return stream == null && fact.getId() < 0;
+	}
+
 	private void createRelationship(Fact fact, Fact parent) {
 		parent.addChild(fact);
 		fact.addParent(parent);
@@ -103,6 +151,10 @@ public class SaxXmlDocumentHandler extends DefaultHandler implements Serializabl
 
 	@Override
 	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (skipped > 0) {
+			skipped--;
+			return;
+		}
 		level--;
 		String str = value.toString().trim();
 		if (!str.isEmpty()) {
@@ -122,14 +174,29 @@ public class SaxXmlDocumentHandler extends DefaultHandler implements Serializabl
 			}
 
 		}
+		if (stream != null && fact.getType() == Type.value
+				&& (filter == null || fact.getId() >= 0 || filter.isAccepted(xbrl, fact))) {
+			stream.add(fact);
+		}
 		factStack.pop();
-		fact = factStack.peek();
+		Fact parent = factStack.peek();
+		if (isKeptBack(fact) && !isKeptBack(parent)) {
+			if (fact.getType() == Type.context) {
+				xbrl.addPendingContext(fact);
+			} else if (filter.isAccepted(xbrl, fact)) {
+				xbrl.attach(fact, parent);
+			}
+		}
+		fact = parent;
 		value = new StringBuffer();
 
 	}
 
 	@Override
 	public void characters(char ch[], int start, int length) throws SAXException {
+		if (skipped > 0) {
+			return;
+		}
 		if (value.length()<xbrl.getMaxFieldSize()) {
 			value.append(new String(ch, start, length));
 		}
@@ -144,6 +211,7 @@ public class SaxXmlDocumentHandler extends DefaultHandler implements Serializabl
 		value.setLength(0);
 		factStack.clear();
 		index = null;
+		stream = null;
 		xbrl = null;
 	}
 
@@ -1,7 +1,6 @@
 package ch.pschatzmann.edgar.reporting;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -10,10 +9,13 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
+import ch.pschatzmann.edgar.utils.ConnectionPool;
 import ch.pschatzmann.edgar.utils.Utils;
 
 /**
- * Access to database. Implemented as singleton
+ * Access to database. Implemented as singleton: each request uses its own
+ * connection from the shared ConnectionPool, so that the requests can be
+ * executed in parallel.
  * 
  * @author pschatzmann
  *
@@ -22,7 +24,6 @@ import ch.pschatzmann.edgar.utils.Utils;
 public class DBMS {
 	private static final Logger LOG = Logger.getLogger(DBMS.class);
 	private static DBMS instance = null;
-	private Connection connection = null;
 	
 	/**
 	 * Enforce access via singleton
@@ -49,33 +50,29 @@ public class DBMS {
 	 * @throws ClassNotFoundException
 	 */
 	public void execute(String sql, Table tab) throws SQLException, ClassNotFoundException {
-		openConnection();
-		Statement statement = connection.createStatement();
-		LOG.info("executeQuery");
-		ResultSet rs = statement.executeQuery(sql);
-		LOG.info("executeQuery completed");
-		try {
-			while (rs.next()) {
-				tab.putRecord(rs);
+		try (Connection connection = openConnection(); Statement statement = connection.createStatement()) {
+			LOG.info("executeQuery");
+			try (ResultSet rs = statement.executeQuery(sql)) {
+				LOG.info("executeQuery completed");
+				while (rs.next()) {
+					tab.putRecord(rs);
+				}
+				LOG.info("records added to Table");
 			}
-			LOG.info("records added to Table");
-		} finally {
-			rs.close();
-			statement.close();
 		}
 	}
 
-	protected void openConnection() throws SQLException, ClassNotFoundException {
-		if (connection == null || connection.isClosed()) {
-			LOG.info("Opening connection to database");
-			Class.forName(Utils.getProperty("jdbcDriver", "org.postgresql.Driver"));
-			String url = Utils.getProperty("jdbcURL", "jdbc:postgresql://nuc.local:5432/edgar");
-			String user = Utils.getProperty("jdbcUser", "edgar");
-			String password = Utils.getProperty("jdbcPassword", "edgar");
-			connection = DriverManager.getConnection(url, user, password);
-			connection.setAutoCommit(false);
-		}
-		connection.rollback();
+	/**
+	 * Provides a connection from the pool which needs to be closed after use
+	 * 
+	 * @return
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	protected Connection openConnection() throws SQLException, ClassNotFoundException {
+		Connection connection = ConnectionPool.getInstance().getConnection();
+		connection.setAutoCommit(false);
+		return connection;
 	}
 
 	public List<String> getFieldValues(String tableName, String fieldName, String like) throws SQLException, ClassNotFoundException {
@@ -95,20 +92,16 @@ public class DBMS {
 		sb.append(" order by 1");
 		
 		List<String> result = new ArrayList();
-		openConnection();
-		Statement statement = connection.createStatement();
 		LOG.info(sb.toString());
-		ResultSet rs = statement.executeQuery(sb.toString());
-		try {
+		try (Connection connection = openConnection();
+				Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery(sb.toString())) {
 			while (rs.next()) {
 				String value = rs.getString(1);
 				if (value!=null) {
 					result.add(value.trim());
 				}
 			}
-		} finally {
-			rs.close();
-			statement.close();
 		}
 		LOG.info("->done");
 		return result;
@@ -12,6 +12,7 @@ import java.util.stream.Collectors;
 
 import ch.pschatzmann.edgar.base.EdgarCompany;
 import ch.pschatzmann.edgar.base.Fact.DataType;
+import ch.pschatzmann.edgar.base.FactFilter;
 import ch.pschatzmann.edgar.base.FactValue;
 import ch.pschatzmann.edgar.base.ICompany;
 import ch.pschatzmann.edgar.base.XBRL;
@@ -31,6 +32,8 @@ public class CompanyEdgarValuesEdgar extends CompanyEdgarValuesBase implements I
 	private static final long serialVersionUID = 1L;
 	private Predicate<FactValue> pedicate = a -> a.getDataType() == DataType.number && a.getUnit().equals("USD")
 			&& a.getContext().getSegments().isEmpty() && !Utils.isEmpty(a.getDate());
+	private FactFilter factFilter = new FactFilter().setUnits(Arrays.asList("USD")).setWithoutSegments(true)
+			.setDataTypes(DataType.number);
 	private String identifier;
 	private Collection<String> parameterNames;
 
@@ -68,6 +71,7 @@ public class CompanyEdgarValuesEdgar extends CompanyEdgarValuesBase implements I
 			throws DataException, ClassNotFoundException, SQLException {
 		this.identifier = company.getCompanyNumber();
 		this.pedicate = pedicate;
+		this.factFilter = new FactFilter();
 	}
 
 	/**
@@ -84,11 +88,13 @@ public class CompanyEdgarValuesEdgar extends CompanyEdgarValuesBase implements I
 
 					IRowFilter f = (IRowFilter) this.filter;
 					String regex = getRegex(f);
-					// process all XBRL filings
+					// process all XBRL filings: only the requested parameters are kept by the parser
+					factFilter.setParameterNames(Arrays.asList(parameterNamesArray));
 					new CompanyInformation(identifier,regex.replaceAll("\\.\\*", "")).stream(regex)
 					    .parallel()
-						.filter(e -> e.getXBRL().isPresent())
-						.map(e -> e.getXBRL().get())
+						.map(e -> e.getXBRL(factFilter))
+						.filter(e -> e.isPresent())
+						.map(e -> e.get())
 						.forEach(e -> this.addValues(e, table));
 
 					// add requested parameter as column even if it does not exist
@@ -121,6 +127,17 @@ public class CompanyEdgarValuesEdgar extends CompanyEdgarValuesBase implements I
 		table.addValues(records);
 	}
 
+	/**
+	 * Defines the selection of the values which is applied while parsing the
+	 * filings. The parameter names are added from the requested parameters. This
+	 * needs to be consistent with the predicate.
+	 * 
+	 * @param factFilter
+	 */
+	public void setFactFilter(FactFilter factFilter) {
+		this.factFilter = factFilter;
+	}
+
 	protected String getRegex(IRowFilter f) {
 		String regex = null;
 		if (this.filter instanceof IRowFilter) {
@@ -12,6 +12,8 @@ import java.util.stream.Collectors;
 
 import ch.pschatzmann.edgar.base.EdgarCompany;
 import ch.pschatzmann.edgar.base.Fact.DataType;
+import ch.pschatzmann.edgar.base.FactFilter;
+import ch.pschatzmann.edgar.base.FactRecord;
 import ch.pschatzmann.edgar.base.FactValue;
 import ch.pschatzmann.edgar.base.XBRL;
 import ch.pschatzmann.edgar.base.errors.DataException;
@@ -29,6 +31,12 @@ public class CompanyEdgarValuesFile extends CompanyEdgarValuesBase implements IC
 	private static final long serialVersionUID = 1L;
 	private Predicate<FactValue> pedicate = a -> a.getDataType() == DataType.number && a.getUnit().equals("USD")
 			&& a.getContext().getSegments().isEmpty() && !Utils.isEmpty(a.getDate());
+	private Predicate<FactRecord> recordPredicate = r -> r.getUnit().equals("USD") && r.getSegment().isEmpty()
+			&& !Utils.isEmpty(r.getDate());
+	private FactFilter factFilter = new FactFilter().setUnits(Arrays.asList("USD")).setWithoutSegments(true)
+			.setDataTypes(DataType.number);
+	private boolean streaming = false;
+	private Integer parallelism = null;
 	private String identifier;
 	private Collection<String> parameterNames;
 
@@ -58,6 +66,7 @@ public class CompanyEdgarValuesFile extends CompanyEdgarValuesBase implements IC
 			throws DataException, ClassNotFoundException, SQLException {
 		this.identifier = company.getCompanyNumber();
 		this.pedicate = pedicate;
+		this.factFilter = new FactFilter();
 	}
 
 	/**
@@ -67,13 +76,10 @@ public class CompanyEdgarValuesFile extends CompanyEdgarValuesBase implements IC
 		try {
 			if (table == null) {
 				if (parameterNamesArray != null) {
-					XBRL xbrl;
+					String fileNameRegex = ".*";
 					if (this.filter instanceof IRowFilter) {
 						IRowFilter f = (IRowFilter) this.filter;
-						xbrl = new EdgarCompany(identifier).getXBRL(f.getFileNameRegex());					
-						
-					} else {
-						xbrl = new EdgarCompany(identifier).getXBRL();					
+						fileNameRegex = f.getFileNameRegex();
 					}
 	
 					ValueTable table = new ValueTable("value", "parameterName", Arrays.asList("prefix", "label", "uri", "dateLabel",
@@ -81,11 +87,28 @@ public class CompanyEdgarValuesFile extends CompanyEdgarValuesBase implements IC
 							//,"incorporation","companyName","sicCode","location","tradingSymbol","sicDescription"
 							));
 					this.table = table;
-					List<Map<String, String>> records = xbrl.findValues().stream()
+					List<Map<String, String>> records;
+					if (streaming) {
+						// only the selected values are kept in memory
+						List<Map<String, String>> result = new ArrayList();
+						new EdgarCompany(identifier).streamValues(fileNameRegex, r -> {
+							if (recordPredicate.test(r) && isValidParameter(r.getParameterName())) {
+								result.add(r.getAttributes());
+							}
+						});
+						records = result;
+					} else {
+						// only the requested parameters are kept by the parser
+						factFilter.setParameterNames(Arrays.asList(parameterNamesArray));
+						EdgarCompany company = new EdgarCompany(identifier);
+						XBRL xbrl = parallelism == null ? company.getXBRL(fileNameRegex, factFilter)
+								: company.getXBRL(fileNameRegex, factFilter, parallelism);
+						records = xbrl.findValues().stream()
 							.filter(pedicate)
 							.filter(p -> isValidParameter(p.getParameterName()))
 							.map(a -> a.getAttributes())
 							.collect(Collectors.toList());
+					}
 					table.addValues(records);
 	
 					// add requested parameter as column even if it does not exist
@@ -104,6 +127,55 @@ public class CompanyEdgarValuesFile extends CompanyEdgarValuesBase implements IC
 
 	}
 
+	public Integer getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Defines the number of filings which are parsed in parallel. If nothing
+	 * is defined we use the default of the XBRL (filingParallelism property)
+	 * 
+	 * @param parallelism
+	 */
+	public void setParallelism(Integer parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Loads the values with the streaming parser. In this case the filtering is
+	 * done with the record predicate
+	 * 
+	 * @param streaming
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Defines the selection of the values which is applied while parsing the
+	 * filings. The parameter names are added from the requested parameters. This
+	 * needs to be consistent with the predicate.
+	 * 
+	 * @param factFilter
+	 */
+	public void setFactFilter(FactFilter factFilter) {
+		this.factFilter = factFilter;
+	}
+
+	/**
+	 * Defines the filtering of the values in streaming mode
+	 * 
+	 * @param recordPredicate
+	 */
+	public void setRecordPredicate(Predicate<FactRecord> recordPredicate) {
+		this.recordPredicate = recordPredicate;
+		this.streaming = true;
+	}
+
 	/**
 	 * Remove the invalid parameter names
 	 * 
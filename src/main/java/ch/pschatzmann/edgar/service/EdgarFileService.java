@@ -401,9 +401,14 @@ public class EdgarFileService implements Serializable {
 			xbrl = new XBRL();
 			//xbrl.setIgnoreHtml(false);
 			xbrl.setMaxFieldSize(maxLength);
+			xbrl.setParallelLoading(true);
+			// parsed filings are restored from the snapshot next to the zip file
+			xbrl.setSnapshots(true);
 			for (String filing : filings) {
 				xbrl.load(getFile(filing));
 			}
+			// the cached document is shared by concurrent requests
+			xbrl.freeze();
 			
 			if (cache != null) {
 				cache.put(key, xbrl);
@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import ch.pschatzmann.common.table.ITable;
@@ -49,14 +50,31 @@ public class ValueTable implements ITableEx<Value> {
 	 * @param maps
 	 */
 	public synchronized void addValues(Collection<Map<String, String>> maps) {
+		addValues(maps, record -> record, record -> new Value(record.get(this.valueName)));
+	}
+
+	/**
+	 * Adds the values of the indicated objects. The cell value is provided
+	 * directly by the valueFunction, so that numbers which are already available
+	 * do not need to be parsed again.
+	 * 
+	 * @param objects
+	 * @param attributesFunction
+	 * @param valueFunction
+	 */
+	public synchronized <T> void addValues(Collection<T> objects, Function<T, Map<String, String>> attributesFunction,
+			Function<T, Value> valueFunction) {
+		List<Map<String, String>> maps = objects.stream().map(attributesFunction).collect(Collectors.toList());
 		setupRowKeyTitles(maps);	
 		setupColumnTitles(maps);
 
 		Set<Key> rows = new TreeSet();
-		for (Map<String, String> record : maps) {
+		int j = 0;
+		for (T object : objects) {
+			Map<String, String> record = maps.get(j++);
 			Key row = this.getRowKey(record);
 			Key col = this.getColKey(record.get(this.colName));
-			Value value = new Value(record.get(this.valueName));
+			Value value = valueFunction.apply(object);
 			rows.add(row);
 			valuesMap.put(new CombinedKey(col, row), value);
 		}
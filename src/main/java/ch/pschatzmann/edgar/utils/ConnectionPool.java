@@ -0,0 +1,500 @@
+package ch.pschatzmann.edgar.utils;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Simple pool of jdbc connections. The connections which are handed out are
+ * returned to the pool when they are closed: open transactions are rolled
+ * back and the auto commit is reset. Connections which have not been used for
+ * some time are validated before they are handed out again.
+ *
+ * Each connection caches its prepared statements, so that the statements
+ * which are prepared again and again (e.g. per filing) are reused.
+ *
+ * The shared pool is configured with the following properties: jdbcDriver,
+ * jdbcURL, jdbcUser, jdbcPassword, jdbcPoolSize, jdbcPoolTimeout (ms),
+ * jdbcValidationInterval (ms) and jdbcStatementCacheSize.
+ *
+ * @author pschatzmann
+ *
+ */
+public class ConnectionPool implements DataSource {
+	private static final Logger LOG = Logger.getLogger(ConnectionPool.class);
+	private static ConnectionPool instance;
+	private String url;
+	private String user;
+	private String password;
+	private int maxSize = Integer.parseInt(
+			Utils.getProperty("jdbcPoolSize", String.valueOf(2 * Runtime.getRuntime().availableProcessors())));
+	private long timeout = Long.parseLong(Utils.getProperty("jdbcPoolTimeout", "30000"));
+	private long validationInterval = Long.parseLong(Utils.getProperty("jdbcValidationInterval", "30000"));
+	private int statementCacheSize = Integer.parseInt(Utils.getProperty("jdbcStatementCacheSize", "50"));
+	private Semaphore permits;
+	private BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque();
+	private AtomicInteger active = new AtomicInteger();
+	private AtomicLong created = new AtomicLong();
+	private AtomicLong borrowed = new AtomicLong();
+	private AtomicLong waitNanos = new AtomicLong();
+	private AtomicLong validationFailures = new AtomicLong();
+	private AtomicLong cacheHits = new AtomicLong();
+	private AtomicLong cacheMisses = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param url
+	 * @param user
+	 * @param password
+	 */
+	public ConnectionPool(String url, String user, String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Returns the pool which is shared by all database users. It is defined by
+	 * the jdbc properties.
+	 *
+	 * @return
+	 * @throws ClassNotFoundException
+	 */
+	public static synchronized ConnectionPool getInstance() throws ClassNotFoundException {
+		if (instance == null) {
+			Class.forName(Utils.getProperty("jdbcDriver", "org.postgresql.Driver"));
+			String url = Utils.getProperty("jdbcURL", "jdbc:postgresql://nuc.local:5432/edgar");
+			String user = Utils.getProperty("jdbcUser", "edgar");
+			String password = Utils.getProperty("jdbcPassword", "edgar");
+			LOG.info("Connection pool for " + url);
+			instance = new ConnectionPool(url, user, password);
+		}
+		return instance;
+	}
+
+	/**
+	 * Provides a connection from the pool. We wait at most for the timeout for a
+	 * free connection.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("No connection available within " + timeout + " ms: " + this);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(ex);
+		}
+		waitNanos.addAndGet(System.nanoTime() - start);
+		try {
+			PooledConnection pooled;
+			while ((pooled = idle.pollFirst()) != null && !pooled.isValid()) {
+				validationFailures.incrementAndGet();
+				pooled.closePhysical();
+			}
+			if (pooled == null) {
+				pooled = new PooledConnection(DriverManager.getConnection(url, user, password));
+				created.incrementAndGet();
+			}
+			borrowed.incrementAndGet();
+			active.incrementAndGet();
+			return pooled.open();
+		} catch (SQLException | RuntimeException ex) {
+			permits.release();
+			throw ex;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("The user is defined by the pool");
+	}
+
+	/**
+	 * Returns the connection to the pool
+	 *
+	 * @param pooled
+	 */
+	protected void release(PooledConnection pooled) {
+		active.decrementAndGet();
+		try {
+			Connection connection = pooled.connection;
+			pooled.releaseStatements();
+			if (!connection.isClosed()) {
+				if (!connection.getAutoCommit()) {
+					connection.rollback();
+				}
+				connection.setAutoCommit(true);
+				pooled.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+			}
+		} catch (SQLException ex) {
+			LOG.warn("The connection is not reused: " + ex);
+			pooled.closePhysical();
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Closes all idle connections
+	 */
+	public void close() {
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			pooled.closePhysical();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Defines the maximum number of connections
+	 *
+	 * @param maxSize
+	 */
+	public synchronized void setMaxSize(int maxSize) {
+		int delta = maxSize - this.maxSize;
+		if (delta > 0) {
+			permits.release(delta);
+		} else if (delta < 0) {
+			permits.acquireUninterruptibly(-delta);
+		}
+		this.maxSize = maxSize;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Defines the maximum time in ms which we wait for a free connection
+	 *
+	 * @param timeout
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public long getValidationInterval() {
+		return validationInterval;
+	}
+
+	/**
+	 * Connections which were idle for longer then the indicated time (in ms) are
+	 * validated before they are used again
+	 *
+	 * @param validationInterval
+	 */
+	public void setValidationInterval(long validationInterval) {
+		this.validationInterval = validationInterval;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * Defines the number of prepared statements which are cached per connection
+	 * (0 = no caching)
+	 *
+	 * @param statementCacheSize
+	 */
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	public int getActive() {
+		return active.get();
+	}
+
+	public int getIdle() {
+		return idle.size();
+	}
+
+	public long getCreated() {
+		return created.get();
+	}
+
+	public long getBorrowed() {
+		return borrowed.get();
+	}
+
+	/**
+	 * Total time in ms which was spent waiting for a free connection
+	 *
+	 * @return
+	 */
+	public long getWaitTime() {
+		return waitNanos.get() / 1000000;
+	}
+
+	public long getValidationFailures() {
+		return validationFailures.get();
+	}
+
+	public long getStatementCacheHits() {
+		return cacheHits.get();
+	}
+
+	public long getStatementCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "active=" + getActive() + ", idle=" + getIdle() + ", max=" + maxSize + ", created=" + getCreated()
+				+ ", borrowed=" + getBorrowed() + ", wait=" + getWaitTime() + " ms, validationFailures="
+				+ getValidationFailures() + ", statementCache=" + getStatementCacheHits() + "/"
+				+ (getStatementCacheHits() + getStatementCacheMisses());
+	}
+
+	@Override
+	public PrintWriter getLogWriter() {
+		return DriverManager.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) {
+		DriverManager.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() {
+		return DriverManager.getLoginTimeout();
+	}
+
+	@Override
+	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("Not a wrapper for " + iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) {
+		return iface.isInstance(this);
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	/**
+	 * Physical connection with its statement cache
+	 */
+	protected class PooledConnection {
+		private Connection connection;
+		private long lastUsed = System.currentTimeMillis();
+		private Map<String, CachedStatement> statements = new LinkedHashMap(16, 0.75f, true);
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		/**
+		 * Provides a new handle for the connection which returns it to the pool
+		 * when it is closed
+		 *
+		 * @return
+		 */
+		Connection open() {
+			boolean[] closed = { false };
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class[] { Connection.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							if (!closed[0]) {
+								closed[0] = true;
+								release(this);
+							}
+							return null;
+						case "isClosed":
+							return closed[0] || connection.isClosed();
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "toString":
+							return "pooled " + connection;
+						default:
+							if (closed[0]) {
+								throw new SQLException("The connection is closed");
+							}
+							if (method.getName().equals("prepareStatement") && args.length == 1) {
+								return prepareStatement((String) args[0]);
+							}
+							return invoke(connection, method, args);
+						}
+					});
+		}
+
+		/**
+		 * Returns the cached statement if it is not used by an other handle
+		 *
+		 * @param sql
+		 * @return
+		 * @throws SQLException
+		 */
+		synchronized PreparedStatement prepareStatement(String sql) throws SQLException {
+			if (statementCacheSize <= 0) {
+				return connection.prepareStatement(sql);
+			}
+			CachedStatement cached = statements.get(sql);
+			if (cached != null && cached.inUse) {
+				cacheMisses.incrementAndGet();
+				return connection.prepareStatement(sql);
+			}
+			if (cached == null || cached.statement.isClosed()) {
+				cacheMisses.incrementAndGet();
+				cached = new CachedStatement(connection.prepareStatement(sql));
+				statements.put(sql, cached);
+				evict();
+			} else {
+				cacheHits.incrementAndGet();
+			}
+			return cached.open();
+		}
+
+		private void evict() {
+			Iterator<CachedStatement> it = statements.values().iterator();
+			while (statements.size() > statementCacheSize && it.hasNext()) {
+				CachedStatement cached = it.next();
+				if (!cached.inUse) {
+					it.remove();
+					cached.closePhysical();
+				}
+			}
+		}
+
+		/**
+		 * Statements which were not closed by the user are not reused
+		 */
+		synchronized void releaseStatements() {
+			Iterator<CachedStatement> it = statements.values().iterator();
+			while (it.hasNext()) {
+				CachedStatement cached = it.next();
+				if (cached.inUse) {
+					it.remove();
+					cached.closePhysical();
+				}
+			}
+		}
+
+		boolean isValid() {
+			try {
+				if (connection.isClosed()) {
+					return false;
+				}
+				if (System.currentTimeMillis() - lastUsed > validationInterval) {
+					return connection.isValid(5);
+				}
+				return true;
+			} catch (SQLException ex) {
+				return false;
+			}
+		}
+
+		synchronized void closePhysical() {
+			for (CachedStatement cached : statements.values()) {
+				cached.closePhysical();
+			}
+			statements.clear();
+			try {
+				connection.close();
+			} catch (SQLException ex) {
+				LOG.warn("Could not close the connection: " + ex);
+			}
+		}
+	}
+
+	/**
+	 * Prepared statement which is kept open when it is closed by the user
+	 */
+	protected class CachedStatement {
+		private PreparedStatement statement;
+		private volatile boolean inUse;
+
+		CachedStatement(PreparedStatement statement) {
+			this.statement = statement;
+		}
+
+		PreparedStatement open() {
+			inUse = true;
+			boolean[] closed = { false };
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class[] { PreparedStatement.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							if (!closed[0]) {
+								closed[0] = true;
+								statement.clearParameters();
+								statement.clearBatch();
+								inUse = false;
+							}
+							return null;
+						case "isClosed":
+							return closed[0] || statement.isClosed();
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							if (closed[0]) {
+								throw new SQLException("The statement is closed");
+							}
+							return invoke(statement, method, args);
+						}
+					});
+		}
+
+		void closePhysical() {
+			try {
+				statement.close();
+			} catch (SQLException ex) {
+				LOG.warn("Could not close the statement: " + ex);
+			}
+		}
+	}
+
+}
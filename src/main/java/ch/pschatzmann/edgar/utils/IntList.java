@@ -0,0 +1,170 @@
+package ch.pschatzmann.edgar.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive int values. We use it instead of a List of
+ * Integer to avoid the boxing overhead for large columns of row ids.
+ *
+ * @author pschatzmann
+ *
+ */
+public class IntList implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private int[] values;
+	private int size = 0;
+
+	/**
+	 * Default Constructor
+	 */
+	public IntList() {
+		this(10);
+	}
+
+	/**
+	 * Constructor with an initial capacity
+	 *
+	 * @param capacity
+	 */
+	public IntList(int capacity) {
+		this.values = new int[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Adds a value at the end of the list
+	 *
+	 * @param value
+	 */
+	public void add(int value) {
+		ensureCapacity(size + 1);
+		values[size++] = value;
+	}
+
+	/**
+	 * Inserts a value at the indicated position
+	 *
+	 * @param pos
+	 * @param value
+	 */
+	public void insert(int pos, int value) {
+		if (pos < 0 || pos > size) {
+			throw new IndexOutOfBoundsException("Index: " + pos + ", Size: " + size);
+		}
+		ensureCapacity(size + 1);
+		System.arraycopy(values, pos, values, pos + 1, size - pos);
+		values[pos] = value;
+		size++;
+	}
+
+	/**
+	 * Returns the value at the indicated position
+	 *
+	 * @param pos
+	 * @return
+	 */
+	public int get(int pos) {
+		if (pos >= size) {
+			throw new IndexOutOfBoundsException("Index: " + pos + ", Size: " + size);
+		}
+		return values[pos];
+	}
+
+	/**
+	 * Replaces the value at the indicated position
+	 *
+	 * @param pos
+	 * @param value
+	 */
+	public void set(int pos, int value) {
+		if (pos >= size) {
+			throw new IndexOutOfBoundsException("Index: " + pos + ", Size: " + size);
+		}
+		values[pos] = value;
+	}
+
+	/**
+	 * Returns the last value. The list must not be empty
+	 *
+	 * @return
+	 */
+	public int last() {
+		return get(size - 1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Binary search in a sorted list. Returns the position if found, otherwise
+	 * (-(insertion point) - 1)
+	 *
+	 * @param value
+	 * @return
+	 */
+	public int binarySearch(int value) {
+		return Arrays.binarySearch(values, 0, size, value);
+	}
+
+	/**
+	 * Galloping search in a sorted list: returns the position of the first value
+	 * which is &gt;= the indicated value starting from the indicated position. If
+	 * there is no such value we return the size.
+	 *
+	 * @param value
+	 * @param from
+	 * @return
+	 */
+	public int gallop(int value, int from) {
+		int low = from;
+		int step = 1;
+		int high = from;
+		while (high < size && values[high] < value) {
+			low = high + 1;
+			high = from + step;
+			step <<= 1;
+		}
+		high = Math.min(high, size);
+		int pos = Arrays.binarySearch(values, low, high, value);
+		return pos >= 0 ? pos : -pos - 1;
+	}
+
+	/**
+	 * Returns a copy of the values
+	 *
+	 * @return
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Releases the unused capacity
+	 */
+	public void trimToSize() {
+		if (values.length > size) {
+			values = Arrays.copyOf(values, Math.max(size, 1));
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			values = Arrays.copyOf(values, Math.max(capacity, values.length + (values.length >> 1) + 1));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+}
@@ -0,0 +1,77 @@
+package ch.pschatzmann.edgar.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket which limits the number of requests per second. The tokens
+ * are refilled continuously up to the capacity (burst). A caller which does
+ * not find a token reserves the next one and waits until it is available, so
+ * that the waiting threads are served in the sequence of their requests.
+ *
+ * @author pschatzmann
+ *
+ */
+public class RateLimiter {
+	private double permitsPerSecond;
+	private double capacity;
+	private double tokens;
+	private long lastRefill = System.nanoTime();
+
+	/**
+	 * Constructor
+	 *
+	 * @param permitsPerSecond
+	 * @param capacity
+	 *            max number of requests which can be executed w/o delay
+	 */
+	public RateLimiter(double permitsPerSecond, double capacity) {
+		if (permitsPerSecond <= 0 || capacity < 1) {
+			throw new IllegalArgumentException("Invalid rate " + permitsPerSecond + " / " + capacity);
+		}
+		this.permitsPerSecond = permitsPerSecond;
+		this.capacity = capacity;
+		this.tokens = capacity;
+	}
+
+	/**
+	 * Waits until a token is available
+	 *
+	 * @return the time in ms which we had to wait
+	 * @throws InterruptedException
+	 */
+	public long acquire() throws InterruptedException {
+		long wait = reserve();
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+		return wait / 1000000;
+	}
+
+	/**
+	 * Takes the next token and returns the time in nanoseconds until it is
+	 * available
+	 *
+	 * @return
+	 */
+	private synchronized long reserve() {
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerSecond / 1000000000.0);
+		lastRefill = now;
+		tokens -= 1;
+		return tokens >= 0 ? 0 : (long) (-tokens * 1000000000.0 / permitsPerSecond);
+	}
+
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	public double getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public String toString() {
+		return permitsPerSecond + " requests/sec (burst " + capacity + ")";
+	}
+
+}
@@ -0,0 +1,119 @@
+package ch.pschatzmann.edgar.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of strings: each distinct string is stored only once and
+ * is represented by an int code. Long strings (e.g. html text blocks) are
+ * usually unique, so we do not hash them but keep them in separate slots which
+ * can be overwritten.
+ *
+ * @author pschatzmann
+ *
+ */
+public class StringDictionary implements Serializable {
+	private static final long serialVersionUID = 1L;
+	public static final int NULL = Integer.MIN_VALUE;
+	private Map<String, Integer> codes = new HashMap();
+	private List<String> values = new ArrayList();
+	private List<String> longValues = new ArrayList();
+	private int maxLength = 200;
+
+	/**
+	 * Returns the code for the indicated string. Long strings get a new
+	 * (negative) code each time.
+	 *
+	 * @param value
+	 * @return
+	 */
+	public int encode(String value) {
+		if (value == null) {
+			return NULL;
+		}
+		if (value.length() > maxLength) {
+			longValues.add(value);
+			return -longValues.size();
+		}
+		Integer code = codes.get(value);
+		if (code == null) {
+			code = values.size();
+			values.add(value);
+			codes.put(value, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Replaces the value for an existing code. Only long values are replaced in
+	 * place. For all other values we return a new code.
+	 *
+	 * @param code
+	 * @param value
+	 * @return
+	 */
+	public int replace(int code, String value) {
+		if (code < 0 && code != NULL && value != null && value.length() > maxLength) {
+			longValues.set(-code - 1, value);
+			return code;
+		}
+		return encode(value);
+	}
+
+	/**
+	 * Returns the string for the indicated code
+	 *
+	 * @param code
+	 * @return
+	 */
+	public String decode(int code) {
+		if (code == NULL) {
+			return null;
+		}
+		return code < 0 ? longValues.get(-code - 1) : values.get(code);
+	}
+
+	/**
+	 * Returns the code of an existing string w/o adding it. If the string is not
+	 * available we return NULL.
+	 *
+	 * @param value
+	 * @return
+	 */
+	public int find(String value) {
+		Integer code = value == null ? null : codes.get(value);
+		return code == null ? NULL : code;
+	}
+
+	/**
+	 * Number of distinct short strings
+	 *
+	 * @return
+	 */
+	public int size() {
+		return values.size();
+	}
+
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Defines the length above which strings are not shared
+	 *
+	 * @param maxLength
+	 */
+	public void setMaxLength(int maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	public void clear() {
+		codes.clear();
+		values.clear();
+		longValues.clear();
+	}
+
+}
@@ -0,0 +1,123 @@
+package ch.pschatzmann.edgar.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool of strings which is used to share the repeated attribute names and
+ * values (e.g. context ids, units, namespace uris, form and file names) of the
+ * parsed facts. Long strings (e.g. html text blocks) are usually unique, so we
+ * do not keep them in the pool.
+ *
+ * The pool of a XBRL document keeps the strings as long as the document
+ * exists. The shared pool can be used by multiple documents: it only keeps
+ * weak references, so that the strings can be garbage collected when they
+ * are not used any more.
+ *
+ * @author pschatzmann
+ *
+ */
+public class StringPool {
+	private static StringPool shared;
+	private Map<String, String> strings;
+	private Map<String, WeakReference<String>> weakStrings;
+	private int maxLength = 200;
+
+	/**
+	 * Default Constructor
+	 */
+	public StringPool() {
+		this(false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param weak
+	 *            if true we keep only weak references to the strings
+	 */
+	public StringPool(boolean weak) {
+		if (weak) {
+			weakStrings = new WeakHashMap();
+		} else {
+			strings = new ConcurrentHashMap();
+		}
+	}
+
+	/**
+	 * Returns the pool which is shared by all documents
+	 *
+	 * @return
+	 */
+	public static synchronized StringPool getShared() {
+		if (shared == null) {
+			shared = new StringPool(true);
+		}
+		return shared;
+	}
+
+	/**
+	 * Returns the pooled instance of the string
+	 *
+	 * @param value
+	 * @return
+	 */
+	public String intern(String value) {
+		if (value == null || value.length() > maxLength) {
+			return value;
+		}
+		if (strings != null) {
+			String result = strings.putIfAbsent(value, value);
+			return result == null ? value : result;
+		}
+		synchronized (weakStrings) {
+			WeakReference<String> ref = weakStrings.get(value);
+			String result = ref == null ? null : ref.get();
+			if (result == null) {
+				weakStrings.put(value, new WeakReference(value));
+				result = value;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Number of pooled strings
+	 *
+	 * @return
+	 */
+	public int size() {
+		if (strings != null) {
+			return strings.size();
+		}
+		synchronized (weakStrings) {
+			return weakStrings.size();
+		}
+	}
+
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Defines the length above which strings are not pooled
+	 *
+	 * @param maxLength
+	 */
+	public void setMaxLength(int maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	public void clear() {
+		if (strings != null) {
+			strings.clear();
+		} else {
+			synchronized (weakStrings) {
+				weakStrings.clear();
+			}
+		}
+	}
+
+}
@@ -1,18 +1,45 @@
 package ch.pschatzmann.edgar.test;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipFile;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.sun.net.httpserver.HttpServer;
+
 import ch.pschatzmann.edgar.base.EdgarCompany;
 import ch.pschatzmann.edgar.base.Presentation;
 import ch.pschatzmann.edgar.base.XBRL;
+import ch.pschatzmann.edgar.dataload.DownloadPipeline;
+import ch.pschatzmann.edgar.dataload.IFilingWriter;
 import ch.pschatzmann.edgar.dataload.rss.DataDownload;
+import ch.pschatzmann.edgar.dataload.rss.FeedInfoRecord;
+import ch.pschatzmann.edgar.dataload.rss.HttpDownloader;
 import ch.pschatzmann.edgar.service.EdgarFileService;
 import ch.pschatzmann.edgar.utils.Utils;
 
@@ -98,6 +125,219 @@ public class TestDataDownload {
 		LOG.info("-presentation: " + p.size());
 	}
 	
+	/**
+	 * Loads the bundled zip files from a local http server with the pipeline
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPipeline() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			File file = new File("src/test/resources" + exchange.getRequestURI().getPath());
+			if (file.isFile()) {
+				exchange.sendResponseHeaders(200, file.length());
+				Files.copy(file.toPath(), exchange.getResponseBody());
+			} else {
+				exchange.sendResponseHeaders(404, -1);
+			}
+			exchange.close();
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		server.setExecutor(executor);
+		server.start();
+		File folder = Files.createTempDirectory("pipeline").toFile();
+		try {
+			String url = "http://localhost:" + server.getAddress().getPort() + "/";
+			List<FeedInfoRecord> records = new ArrayList();
+			records.add(record(url + "22872/22872-10-K-20120330.zip", "22872", "10-K", "20120330"));
+			records.add(record(url + "320193/320193-10-K-20181105.zip", "320193", "10-K", "20181105"));
+			records.add(record(url + "missing.zip", "1", "10-K", "20180101"));
+			records.add(record(url + "html/1104462-10-K-A-20170405.zip", "1104462", "10-K/A", "20170405"));
+			// duplicate entry in the feed
+			records.add(record(url + "22872/22872-10-K-20120330.zip", "22872", "10-K", "20120330"));
+
+			Map<String, Integer> saved = new ConcurrentHashMap();
+			DownloadPipeline pipeline = new DownloadPipeline(folder.getAbsolutePath(), () -> new IFilingWriter() {
+				@Override
+				public boolean save(XBRL xbrl) throws Exception {
+					return saved.put(xbrl.getFilingInfo().getFileName(), xbrl.findValues().size()) == null;
+				}
+
+				@Override
+				public void close() {
+				}
+			});
+			pipeline.setDownloadWorkers(2);
+			pipeline.setParseWorkers(2);
+			pipeline.setWriters(2);
+			pipeline.setQueueSize(1);
+			long start = System.currentTimeMillis();
+			pipeline.process(records);
+			System.out.println("pipeline: " + (System.currentTimeMillis() - start) + " ms; "
+					+ pipeline.getDownloadStage() + "; " + pipeline.getParseStage() + "; "
+					+ pipeline.getWriteStage());
+
+			Assert.assertEquals(3, saved.size());
+			Assert.assertEquals(1, pipeline.getDownloadStage().getFailed());
+			Assert.assertEquals(3, pipeline.getWriteStage().getProcessed());
+			// the failed download is completed as well
+			Assert.assertEquals(4, pipeline.getCompleted());
+			for (FeedInfoRecord rec : records.subList(0, 2)) {
+				XBRL xbrl = new XBRL();
+				xbrl.setSkipHtml(true);
+				xbrl.load(rec.getFile(folder.getAbsolutePath()));
+				Assert.assertEquals(Integer.valueOf(xbrl.findValues().size()),
+						saved.get(xbrl.getFilingInfo().getFileName()));
+			}
+		} finally {
+			server.stop(0);
+			executor.shutdown();
+			FileUtils.deleteDirectory(folder);
+		}
+	}
+
+	/**
+	 * Downloads from a local http server which checks If-Modified-Since and
+	 * records the connections of the client
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDownloader() throws Exception {
+		File root = Files.createTempDirectory("http").toFile();
+		Files.copy(new File("src/test/resources/22872/22872-10-K-20120330.zip").toPath(),
+				new File(root, "filing.zip").toPath());
+		write(new File(root, "xml/FilingSummary.xml"),
+				"<FilingSummary><InputFiles><File>a.xml</File><File>b.xsd</File></InputFiles></FilingSummary>");
+		write(new File(root, "xml/a.xml"), "<a/>");
+		write(new File(root, "xml/b.xsd"), "<schema/>");
+		write(new File(root, "xml/index.htm"), "<html/>");
+		write(new File(root, "html/c.xml"), "<c/>");
+		write(new File(root, "html/index.htm"), "<html><body><a href='c.xml'>c.xml</a><a href='c.htm'>c.htm</a></body></html>");
+
+		AtomicInteger requests = new AtomicInteger();
+		Set<Integer> connections = ConcurrentHashMap.newKeySet();
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			connections.add(exchange.getRemoteAddress().getPort());
+			File file = new File(root, exchange.getRequestURI().getPath());
+			if (file.isFile()) {
+				long modified = file.lastModified() / 1000 * 1000;
+				String since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+				exchange.getResponseHeaders().set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME
+						.format(Instant.ofEpochMilli(modified).atZone(ZoneOffset.UTC)));
+				if (since != null && ZonedDateTime.parse(since, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+						.toEpochMilli() >= modified) {
+					exchange.sendResponseHeaders(304, -1);
+				} else if ("HEAD".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(200, -1);
+				} else {
+					exchange.sendResponseHeaders(200, file.length());
+					Files.copy(file.toPath(), exchange.getResponseBody());
+				}
+			} else {
+				exchange.sendResponseHeaders(404, -1);
+			}
+			exchange.close();
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		server.setExecutor(executor);
+		server.start();
+		File folder = Files.createTempDirectory("download").toFile();
+		try {
+			String url = "http://localhost:" + server.getAddress().getPort() + "/";
+			HttpDownloader downloader = new HttpDownloader(20, 1, 2);
+			long start = System.currentTimeMillis();
+			Assert.assertTrue(downloader.exists(url + "filing.zip"));
+			Assert.assertFalse(downloader.exists(url + "missing.zip"));
+
+			// parallel downloads
+			ExecutorService clients = Executors.newFixedThreadPool(3);
+			List<Future<Boolean>> results = new ArrayList();
+			for (int j = 0; j < 12; j++) {
+				File file = new File(folder, j + ".zip");
+				results.add(clients.submit(() -> downloader.download(url + "filing.zip", file)));
+			}
+			for (Future<Boolean> result : results) {
+				Assert.assertTrue(result.get());
+			}
+			clients.shutdown();
+			long time = System.currentTimeMillis() - start;
+			System.out.println("download: " + time + " ms; " + downloader + "; connections: " + connections.size());
+			// 20 requests per second
+			Assert.assertTrue(time >= (downloader.getRequests() - 1) * 50 - 10);
+			Assert.assertEquals(14, requests.get());
+			Assert.assertTrue(connections.size() < requests.get());
+			for (int j = 0; j < 12; j++) {
+				File file = new File(folder, j + ".zip");
+				Assert.assertEquals(new File(root, "filing.zip").length(), file.length());
+				Assert.assertTrue(new DataDownload(url + "filing.zip").isValidDownloadFile(file));
+			}
+
+			// the existing file is not modified
+			File file = new File(folder, "0.zip");
+			Assert.assertFalse(downloader.download(url + "filing.zip", file));
+			DataDownload dl = new DataDownload(url + "filing.zip");
+			dl.setDownloader(downloader);
+			dl.load(file);
+			Assert.assertEquals(2, downloader.getNotModified());
+			Assert.assertTrue(dl.isValidDownloadFile(file));
+			// the existing file is only checked again with refresh
+			dl.setRefresh(false);
+			Assert.assertFalse(dl.isDownloadRequired(file));
+			dl.setRefresh(true);
+			Assert.assertTrue(dl.isDownloadRequired(file));
+			Assert.assertTrue(dl.isDownloadRequired(new File(folder, "missing.zip")));
+
+			// Edgar requires a declared User-Agent
+			HttpDownloader edgar = new HttpDownloader(20, 1, 1);
+			edgar.setUserAgent("");
+			try {
+				edgar.getBytes("https://www.sec.gov/Archives/edgar/");
+				Assert.fail();
+			} catch (IOException ex) {
+				Assert.assertTrue(ex.getMessage().contains("downloadUserAgent"));
+			}
+
+			// zip with the documents of the FilingSummary.xml or of the index page
+			Assert.assertEquals(Arrays.asList("a.xml", "b.xsd"), zipEntries(url + "xml/index.htm", downloader, folder));
+			Assert.assertEquals(Arrays.asList("c.xml"), zipEntries(url + "html/index.htm", downloader, folder));
+		} finally {
+			server.stop(0);
+			executor.shutdown();
+			FileUtils.deleteDirectory(folder);
+			FileUtils.deleteDirectory(root);
+		}
+	}
+
+	private List<String> zipEntries(String url, HttpDownloader downloader, File folder) throws Exception {
+		File file = new File(folder, "index.zip");
+		DataDownload dl = new DataDownload(url);
+		dl.setDownloader(downloader);
+		dl.load(file);
+		List<String> result = new ArrayList();
+		try (ZipFile zip = new ZipFile(file)) {
+			zip.stream().forEach(e -> result.add(e.getName()));
+		}
+		return result;
+	}
+
+	private void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+	}
+
+	private FeedInfoRecord record(String url, String cik, String form, String date) throws ParseException {
+		FeedInfoRecord rec = new FeedInfoRecord();
+		rec.setUriXbrl(url);
+		rec.setCIKNumber(cik);
+		rec.setForm(form);
+		rec.setPublishedDate(new SimpleDateFormat("yyyyMMdd").parse(date));
+		return rec;
+	}
+
 	@Test
 	public void testCompany() throws Exception {
 		EdgarCompany ci = new EdgarCompany("3153");
@@ -1,18 +1,243 @@
 package ch.pschatzmann.edgar.test;
 
 import java.io.File;
-import java.net.URL;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 
+import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import ch.pschatzmann.edgar.base.Fact;
+import ch.pschatzmann.edgar.base.Fact.DataType;
+import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.base.FactValue;
+import ch.pschatzmann.edgar.base.XBRL;
+import ch.pschatzmann.edgar.dataload.CopyLoader;
 import ch.pschatzmann.edgar.dataload.DownloadProcessorJDBC;
+import ch.pschatzmann.edgar.dataload.FilingLedger;
+import ch.pschatzmann.edgar.dataload.LoadMetrics;
+import ch.pschatzmann.edgar.dataload.TableFactory;
+import ch.pschatzmann.edgar.utils.ConnectionPool;
 
 public class TestDatabase {
+	private List<String> valueFields = Arrays.asList("date", "identifier", "parameterName", "label", "numberOfMonths",
+			"dateLabel", "file", "form", "segment", "value", "segmentDimension", "unitRef", "decimals");
+
 	@Test
 	public void test() throws Exception {
 		DownloadProcessorJDBC db = new DownloadProcessorJDBC();
 		db.loadToDatabase(new File("src/test/resources/22872/22872-10-K-20120330.zip").toURI().toURL(),true);
 		db.close();
 	}
-	
+
+	@Test
+	public void testLedger() throws Exception {
+		DownloadProcessorJDBC db = null;
+		try {
+			db = new DownloadProcessorJDBC();
+		} catch (Exception ex) {
+			Assume.assumeNoException(ex);
+		}
+		File file = new File("src/test/resources/22872/22872-10-K-20120330.zip");
+		db.loadToDatabase(file.toURI().toURL(), true);
+		Assert.assertTrue(db.getLedger().isLoaded(file.getName()));
+		// a new ledger finds the filing in the filings table
+		TableFactory tableFactory = new TableFactory();
+		FilingLedger ledger = new FilingLedger(tableFactory);
+		Assert.assertTrue(ledger.isLoaded(file.getName()));
+		Assert.assertFalse(ledger.isLoaded("0-10-K-20000101.zip"));
+		tableFactory.close();
+		db.close();
+	}
+
+	/**
+	 * The connections and the prepared statements are reused by the pool
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConnectionPool() throws Exception {
+		ConnectionPool pool = null;
+		Connection connection = null;
+		try {
+			pool = ConnectionPool.getInstance();
+			connection = pool.getConnection();
+		} catch (Exception ex) {
+			Assume.assumeNoException(ex);
+		}
+		connection.close();
+		long created = pool.getCreated();
+		long hits = pool.getStatementCacheHits();
+		for (int j = 0; j < 10; j++) {
+			try (Connection c = pool.getConnection();
+					PreparedStatement ps = c.prepareStatement("select count(*) from company where identifier = ?")) {
+				ps.setString(1, "320193");
+				try (ResultSet rs = ps.executeQuery()) {
+					Assert.assertTrue(rs.next());
+				}
+			}
+		}
+		System.out.println(pool);
+		Assert.assertEquals(created, pool.getCreated());
+		Assert.assertTrue(pool.getStatementCacheHits() >= hits + 9);
+		Assert.assertEquals(0, pool.getActive());
+	}
+
+	/**
+	 * Load benchmark for the batched inserts. The test is skipped if the database
+	 * (jdbcURL, e.g. a local instance started with pg_ctl) is not available.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBatchInsert() throws Exception {
+		XBRL xbrl = new XBRL();
+		xbrl.load(new File("src/test/resources/320193/320193-10-K-20181105.zip"));
+		Collection<Fact> facts = xbrl.find(Type.value);
+
+		for (int batchSize : Arrays.asList(1, 100, 1000)) {
+			TableFactory tableFactory = new TableFactory();
+			try {
+				tableFactory.openConnection();
+			} catch (Exception ex) {
+				Assume.assumeNoException(ex);
+			}
+			tableFactory.setBatchSize(batchSize);
+			createBenchmarkTable(tableFactory);
+
+			long start = System.currentTimeMillis();
+			int count = 0;
+			for (Fact f : facts) {
+				if (f.getDataType() == DataType.number) {
+					tableFactory.addRecord("values_benchmark", valueFields, f.getAttributes(), "values_benchmark_key",
+							((FactValue) f).getNumber());
+					count++;
+				}
+			}
+			tableFactory.commit();
+			LoadMetrics metrics = tableFactory.getMetrics();
+			System.out.println("batchSize=" + batchSize + ": " + count + " records in "
+					+ (System.currentTimeMillis() - start) + " ms; " + metrics);
+			Assert.assertEquals(count, metrics.getRows());
+			Assert.assertEquals(count, metrics.getInserted() + metrics.getConflicts());
+
+			// loading the same records again only reports conflicts
+			metrics.clear();
+			for (Fact f : facts) {
+				if (f.getDataType() == DataType.number) {
+					tableFactory.addRecord("values_benchmark", valueFields, f.getAttributes(), "values_benchmark_key",
+							((FactValue) f).getNumber());
+				}
+			}
+			tableFactory.commit();
+			Assert.assertEquals(count, metrics.getConflicts());
+
+			tableFactory.execute("DROP TABLE values_benchmark");
+			tableFactory.close();
+		}
+	}
+
+	/**
+	 * Compares the row at a time inserts with the bulk load (COPY into a staging
+	 * table). The test is skipped if the database is not available.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBulkLoad() throws Exception {
+		XBRL xbrl = new XBRL();
+		xbrl.load(new File("src/test/resources/320193/320193-10-K-20181105.zip"));
+		Collection<Fact> facts = xbrl.find(Type.value);
+
+		TableFactory tableFactory = new TableFactory();
+		try {
+			tableFactory.openConnection();
+		} catch (Exception ex) {
+			Assume.assumeNoException(ex);
+		}
+
+		// row at a time
+		tableFactory.setBatchSize(1);
+		createBenchmarkTable(tableFactory);
+		long start = System.currentTimeMillis();
+		for (Fact f : facts) {
+			if (f.getDataType() == DataType.number) {
+				tableFactory.addRecord("values_benchmark", valueFields, f.getAttributes(), "values_benchmark_key",
+						((FactValue) f).getNumber());
+			}
+		}
+		tableFactory.commit();
+		long rowTime = System.currentTimeMillis() - start;
+		LoadMetrics rowMetrics = tableFactory.getMetrics();
+
+		// bulk load
+		createBenchmarkTable(tableFactory);
+		CopyLoader loader = new CopyLoader(tableFactory, "values_benchmark", valueFields, "values_benchmark_key");
+		start = System.currentTimeMillis();
+		for (Fact f : facts) {
+			if (f.getDataType() == DataType.number) {
+				loader.addRecord(f.getAttributes(), ((FactValue) f).getNumber());
+			}
+		}
+		loader.close();
+		long bulkTime = System.currentTimeMillis() - start;
+		System.out.println("row at a time: " + rowTime + " ms (" + rowMetrics + ") -> bulk load: " + bulkTime
+				+ " ms (" + loader.getMetrics() + ")");
+		Assert.assertEquals(rowMetrics.getInserted(), loader.getMetrics().getInserted());
+		Assert.assertTrue(tableFactory.hasNext("select * from values_benchmark limit 1", false));
+		Assert.assertFalse(tableFactory.hasNext("select * from values_benchmark_staging limit 1", false));
+
+		tableFactory.execute("DROP TABLE values_benchmark_staging");
+		tableFactory.execute("DROP TABLE values_benchmark");
+		tableFactory.close();
+	}
+
+	/**
+	 * Loads a filing with the bulk load of the DownloadProcessorJDBC: with the
+	 * parsed document and with the streaming parser
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBulkLoadProcessor() throws Exception {
+		File file = new File("src/test/resources/22872/22872-10-K-20120330.zip");
+		for (boolean streaming : new boolean[] { false, true }) {
+			DownloadProcessorJDBC db = null;
+			try {
+				db = new DownloadProcessorJDBC();
+			} catch (Exception ex) {
+				Assume.assumeNoException(ex);
+			}
+			db.setBulkLoad(true);
+			db.setStreaming(streaming);
+			db.loadToDatabase(file.toURI().toURL(), true);
+			// the staged values are merged on close
+			db.close();
+
+			TableFactory tableFactory = new TableFactory();
+			Collection<String> count = tableFactory
+					.getList("select count(*) from values where file = '" + file.getName() + "'");
+			System.out.println("streaming=" + streaming + ": " + count);
+			Assert.assertTrue(Long.parseLong(count.iterator().next()) > 0);
+			Assert.assertTrue(new FilingLedger(tableFactory).isLoaded(file.getName()));
+			Collection<String> checksum = tableFactory
+					.getList("select checksum from filings where file = '" + file.getName() + "'");
+			Assert.assertNotNull(checksum.iterator().next());
+			tableFactory.close();
+		}
+	}
+
+	private void createBenchmarkTable(TableFactory tableFactory) throws SQLException {
+		tableFactory.execute("DROP TABLE IF EXISTS values_benchmark");
+		tableFactory.createTable("values_benchmark", valueFields);
+		tableFactory.addIndex(
+				"ALTER TABLE values_benchmark ADD CONSTRAINT values_benchmark_key PRIMARY KEY (date, identifier, parameterName, segment, numberOfMonths, form)");
+	}
+
 }
@@ -79,4 +79,36 @@ public class TestIndexAPI {
 		
 		Assert.assertEquals(f1, api.find1("a", Arrays.asList(Type.value)));
 	}
+
+	@Test
+	public void testIndexMultipleValues() throws Exception {
+		XBRL x = new XBRL();
+		IndexAPI api = x.getIndex();
+		Fact f1 = new Fact(x,Type.value, 0, 0l);
+		Fact f2 = new Fact(x,Type.value, 0, 0l);
+		Fact f3 = new Fact(x,Type.context, 0, 0l);
+		api.add("a", f1);
+		api.add("a", f2);
+		api.add("a", f3);
+		api.add("b", f3);
+		api.add("b", f2);
+		
+		Assert.assertEquals(Arrays.asList(f2), api.find(Arrays.asList("a","b"), Arrays.asList(Type.value)));
+		Assert.assertEquals(Arrays.asList(f2, f3), api.find(Arrays.asList("a","","b"), Arrays.asList(Type.value, Type.context)));
+		Assert.assertEquals(0, api.find(Arrays.asList("a","c"), Arrays.asList(Type.value)).size());
+	}
+
+	@Test
+	public void testIndexSortedByType() throws Exception {
+		XBRL x = new XBRL();
+		IndexAPI api = x.getIndex();
+		Fact f1 = new Fact(x,Type.value, 0, 0l);
+		Fact f2 = new Fact(x,Type.context, 0, 0l);
+		api.add("a", f2);
+		api.add("a", f1);
+		
+		Assert.assertEquals(Arrays.asList(f1, f2), api.find("a"));
+		Assert.assertEquals(Arrays.asList(f1, f2), api.find("a", Arrays.asList(Type.context, Type.value)));
+		Assert.assertEquals(f1, api.find1("a", Arrays.asList(Type.context, Type.value)));
+	}
 }
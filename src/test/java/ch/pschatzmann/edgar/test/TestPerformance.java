@@ -0,0 +1,818 @@
+package ch.pschatzmann.edgar.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.pschatzmann.edgar.base.Context;
+import ch.pschatzmann.edgar.base.Fact;
+import ch.pschatzmann.edgar.base.Fact.DataType;
+import ch.pschatzmann.edgar.base.Fact.Type;
+import ch.pschatzmann.edgar.base.FactFilter;
+import ch.pschatzmann.edgar.base.FactRecord;
+import ch.pschatzmann.edgar.base.FactValue;
+import ch.pschatzmann.edgar.base.LabelAPI;
+import ch.pschatzmann.edgar.base.Presentation;
+import ch.pschatzmann.edgar.base.PresentationAPI;
+import ch.pschatzmann.edgar.base.XBRL;
+import ch.pschatzmann.edgar.base.XBRLSnapshot;
+import ch.pschatzmann.edgar.parsing.DocumentSniffer;
+import ch.pschatzmann.edgar.parsing.SAXParserPool;
+import ch.pschatzmann.edgar.utils.StringPool;
+import ch.pschatzmann.edgar.utils.Utils;
+
+/**
+ * Simple benchmarks which report the memory usage and the execution times on
+ * the filings in the test resources
+ *
+ * @author pschatzmann
+ *
+ */
+public class TestPerformance {
+	private static List<String> files = Arrays.asList("./src/test/resources/22872/22872-10-K-20120330.zip",
+			"./src/test/resources/320193/320193-10-K-20181105.zip",
+			"./src/test/resources/html/1104462-10-K-A-20170405.zip",
+			"./src/test/resources/0000801337-18-000086-xbrl.zip");
+
+	@Test
+	public void testMemoryPerFact() throws Exception {
+		for (String file : files) {
+			long objectBytes = bytesPerFact(file, false);
+			long columnarBytes = bytesPerFact(file, true);
+			System.out.println(new File(file).getName() + ": " + objectBytes + " bytes per fact -> columnar: "
+					+ columnarBytes + " bytes per fact");
+		}
+	}
+
+	@Test
+	public void testColumnarValues() throws Exception {
+		XBRL objects = load(files.get(0), false);
+		XBRL columns = load(files.get(0), true);
+		List<FactValue> values = objects.findValues();
+		List<FactValue> columnValues = columns.findValues();
+		Assert.assertEquals(objects.find().size(), columns.find().size());
+		Assert.assertEquals(values.size(), columnValues.size());
+		for (int j = 0; j < values.size(); j++) {
+			Assert.assertEquals(values.get(j).getAttributes(), columnValues.get(j).getAttributes());
+		}
+		// the combined text values are not kept by the store
+		for (XBRL xbrl : Arrays.asList(objects, columns)) {
+			int facts = xbrl.getFactStore().size();
+			Assert.assertFalse(xbrl.getCombinedTextValues().isEmpty());
+			String date = xbrl.getCombinedTextValues().get(0).getAttributes().get("date");
+			Assert.assertEquals(facts, xbrl.getFactStore().size());
+			// and they are not indexed
+			int found = xbrl.find(date).size();
+			int dateValues = xbrl.find(date, Type.value).size();
+			Assert.assertTrue(dateValues > 0);
+			xbrl.freeze();
+			Assert.assertEquals(found, xbrl.find(date).size());
+			Assert.assertEquals(dateValues, xbrl.find(date, Type.value).size());
+		}
+	}
+
+	@Test
+	public void testFindByType() throws Exception {
+		// 10-K with html exhibits
+		XBRL xbrl = load(files.get(2), false);
+		int count = 1000;
+		List<Fact> all = xbrl.find();
+		long start = System.currentTimeMillis();
+		long scanned = 0;
+		for (int j = 0; j < count; j++) {
+			// this is what a scan of the exploded tree costs
+			for (Fact f : all) {
+				if (f.getType() == Type.value || f.getType() == Type.context) {
+					scanned++;
+				}
+			}
+		}
+		long scanTime = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		long found = 0;
+		for (int j = 0; j < count; j++) {
+			found += xbrl.find(Type.value).size();
+			found += xbrl.find(Type.context).size();
+		}
+		long indexTime = System.currentTimeMillis() - start;
+
+		System.out.println("find(Type.value) and find(Type.context) on " + all.size() + " facts: scan " + scanTime
+				+ " ms -> type index " + indexTime + " ms for " + count + " calls");
+		Assert.assertEquals(scanned, found);
+	}
+
+	@Test
+	public void testParserPool() throws Exception {
+		SAXParserPool pool = SAXParserPool.getInstance();
+		for (boolean reuseHandlers : Arrays.asList(false, true)) {
+			long created = pool.getCreatedCount();
+			long documents = pool.getBorrowedCount();
+			int filings = 0;
+			long start = System.currentTimeMillis();
+			for (int j = 0; j < 3; j++) {
+				for (String file : files) {
+					XBRL xbrl = new XBRL();
+					xbrl.setReuseHandlers(reuseHandlers);
+					xbrl.load(new File(file));
+					xbrl.close();
+					filings++;
+				}
+			}
+			long time = System.currentTimeMillis() - start;
+			System.out.println("reuseHandlers=" + reuseHandlers + ": " + filings + " filings with "
+					+ (pool.getBorrowedCount() - documents) + " documents; parsers created per filing: "
+					+ ((double) (pool.getCreatedCount() - created) / filings) + "; throughput: "
+					+ (filings * 1000.0 / time) + " filings/sec");
+		}
+		Assert.assertTrue(pool.getCreatedCount() < pool.getBorrowedCount());
+	}
+
+	@Test
+	public void testParallelLoading() throws Exception {
+		for (String file : files) {
+			long sequential = Long.MAX_VALUE;
+			long parallel = Long.MAX_VALUE;
+			for (int j = 0; j < 3; j++) {
+				sequential = Math.min(sequential, loadTime(file, false));
+				parallel = Math.min(parallel, loadTime(file, true));
+			}
+			System.out.println(new File(file).getName() + ": sequential " + sequential + " ms -> parallel " + parallel
+					+ " ms");
+		}
+
+		XBRL sequential = new XBRL();
+		sequential.load(new File(files.get(1)));
+		XBRL parallel = new XBRL();
+		parallel.setParallelLoading(true);
+		parallel.load(new File(files.get(1)));
+		Assert.assertEquals(sequential.find().size(), parallel.find().size());
+		List<FactValue> values = sequential.findValues();
+		List<FactValue> parallelValues = parallel.findValues();
+		for (int j = 0; j < values.size(); j++) {
+			Assert.assertEquals(values.get(j).getAttributes(), parallelValues.get(j).getAttributes());
+		}
+	}
+
+	@Test
+	public void testStreaming() throws Exception {
+		// the labels are compared separately because they are not unique for all parameters
+		List<String> fields = Arrays.asList("parameterName", "contextRef", "value", "unitRef", "decimals", "date",
+				"dateLabel", "numberOfMonths", "segment", "segmentDimension", "identifier", "form", "file");
+		for (String file : files) {
+			long start = usedMemory();
+			XBRL xbrl = load(file, false);
+			List<String> values = xbrl.findValues(DataType.number).stream().map(v -> toString(v.getAttributes(), fields))
+					.sorted().collect(Collectors.toList());
+			long loadMemory = usedMemory() - start;
+			int facts = xbrl.getFactStore().size();
+			xbrl.close();
+
+			start = usedMemory();
+			XBRL streaming = new XBRL();
+			List<FactRecord> records = new ArrayList();
+			long count = streaming.stream(new File(file), r -> records.add(r));
+			long streamingMemory = usedMemory() - start;
+			List<String> streamed = records.stream().map(r -> toString(r.getAttributes(), fields)).sorted()
+					.collect(Collectors.toList());
+
+			System.out.println(new File(file).getName() + ": " + count + " numeric values; facts kept " + facts + " -> "
+					+ streaming.getFactStore().size() + "; memory " + loadMemory / 1024 + " KB -> streaming "
+					+ streamingMemory / 1024 + " KB");
+			Assert.assertEquals(values.size(), count);
+			Assert.assertEquals(values, streamed);
+		}
+	}
+
+	@Test
+	public void testNumericValues() throws Exception {
+		// 10-Q with scaled values
+		XBRL xbrl = load(files.get(3), false);
+		List<FactValue> values = xbrl.findValues();
+		int count = 100;
+		long start = System.currentTimeMillis();
+		long parsed = 0;
+		for (int j = 0; j < count; j++) {
+			// this is what the parsing of the strings costs
+			for (FactValue v : values) {
+				if (v.getDataType(v.getValue()) == DataType.number) {
+					parsed += new BigDecimal(v.getValue()).signum();
+				}
+			}
+		}
+		long parseTime = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		long numbers = 0;
+		for (int j = 0; j < count; j++) {
+			for (FactValue v : values) {
+				if (v.getDataType() == DataType.number) {
+					numbers += v.getNumber().signum();
+				}
+			}
+		}
+		long numberTime = System.currentTimeMillis() - start;
+
+		System.out.println(values.size() + " values: parsing " + parseTime + " ms -> parsed numbers " + numberTime
+				+ " ms for " + count + " passes");
+		Assert.assertEquals(parsed, numbers);
+		for (FactValue v : values) {
+			if (v.getScale() != 0 && v.getNumber() != null) {
+				Assert.assertEquals(0, v.getNumber().compareTo(new BigDecimal(v.getValue())));
+				Assert.assertEquals(v.getNumber().scale() > 0, v.getValue().contains("."));
+			}
+		}
+		Assert.assertTrue(xbrl.containsScaledValues());
+	}
+
+	@Test
+	public void testContextTable() throws Exception {
+		// 10-Q with many values
+		XBRL xbrl = load(files.get(3), false);
+		List<FactValue> values = xbrl.findValues();
+		long start = System.currentTimeMillis();
+		int rows = xbrl.toTable().getRowCount();
+		long time = System.currentTimeMillis() - start;
+
+		Set<Context> contexts = Collections.newSetFromMap(new IdentityHashMap());
+		for (FactValue value : values) {
+			Context ctx = value.getContext();
+			if (ctx != null) {
+				Assert.assertSame(xbrl.getContextByID(value.getContextID()), ctx);
+				contexts.add(ctx);
+			}
+		}
+		System.out.println("toTable() on " + values.size() + " values: " + time + " ms for " + rows + " rows; "
+				+ contexts.size() + " shared contexts");
+		Assert.assertTrue(contexts.size() <= xbrl.find(Type.context).size());
+	}
+
+	@Test
+	public void testLabels() throws Exception {
+		for (String file : files) {
+			XBRL xbrl = load(file, false);
+			List<FactValue> values = xbrl.findValues();
+
+			// the first label request groups the label nodes
+			long start = System.currentTimeMillis();
+			for (FactValue value : values) {
+				value.getAttributes();
+			}
+			long attributeTime = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			long length = 0;
+			for (Presentation p : xbrl.getPresentationAPI().getChildren()) {
+				length += p.toHTML().length();
+			}
+			long presentationTime = System.currentTimeMillis() - start;
+
+			LabelAPI labels = xbrl.getLabelAPI();
+			start = System.nanoTime();
+			for (FactValue value : values) {
+				Assert.assertSame(labels.getLabel(value.getParameterName()),
+						labels.getLabel(value.getParameterName()));
+			}
+			long lookupTime = System.nanoTime() - start;
+
+			// the labels are released while they are read (e.g. by the lazy loading
+			// of the linkbases)
+			String parameter = values.get(0).getParameterName();
+			String expected = labels.getLabel(parameter).getLabel();
+			Thread clear = new Thread(() -> {
+				for (int j = 0; j < 1000; j++) {
+					labels.clear();
+				}
+			});
+			clear.start();
+			for (int j = 0; j < 10; j++) {
+				values.parallelStream().forEach(v -> labels.getLabel(v.getParameterName()));
+			}
+			clear.join();
+			Assert.assertEquals(expected, labels.getLabel(parameter).getLabel());
+
+			System.out.println(new File(file).getName() + ": attribute setup " + attributeTime + " ms; presentation "
+					+ presentationTime + " ms (" + length + " chars); " + (2 * values.size()) + " label lookups "
+					+ lookupTime / 1000 + " us");
+			xbrl.close();
+		}
+	}
+
+	@Test
+	public void testPresentation() throws Exception {
+		// 10-Q with many presentation nodes
+		XBRL xbrl = load(files.get(3), false);
+		PresentationAPI api = xbrl.getPresentationAPI();
+		api.setSuppressEmptyRows(true);
+		long start = System.currentTimeMillis();
+		long length = 0;
+		for (Presentation p : api.getChildren()) {
+			length += p.toHTML().length();
+		}
+		long htmlTime = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		long ids = 0;
+		for (Presentation p : api.getChildrenEx()) {
+			ids += p.getContextIds().size() + p.getDimensions().size();
+		}
+		long nodeTime = System.currentTimeMillis() - start;
+		System.out.println("presentation with " + api.getChildrenEx().size() + " nodes: toHTML " + htmlTime + " ms ("
+				+ length + " chars); contexts and dimensions of all nodes " + nodeTime + " ms (" + ids + ")");
+
+		// compare the filtered rows with a scan of the facts
+		List<Context> ctxList = api.getRoot().getContexts(false);
+		List<Presentation> rows = api.getRoot().getChildrenEx(ctxList);
+		for (Presentation p : api.getChildrenEx()) {
+			boolean hasFacts = p.getChildrenEx().stream().flatMap(c -> c.getFacts(ctxList).stream()).findAny()
+					.isPresent();
+			Assert.assertEquals(hasFacts, rows.contains(p));
+		}
+	}
+
+	@Test
+	public void testLazyLinkbases() throws Exception {
+		for (String file : files) {
+			long eagerTime = Long.MAX_VALUE;
+			long lazyTime = Long.MAX_VALUE;
+			for (int j = 0; j < 3; j++) {
+				long start = System.currentTimeMillis();
+				load(file, false).close();
+				eagerTime = Math.min(eagerTime, System.currentTimeMillis() - start);
+				XBRL lazy = new XBRL();
+				lazy.setLazyLinkbases(true);
+				start = System.currentTimeMillis();
+				lazy.load(new File(file));
+				lazyTime = Math.min(lazyTime, System.currentTimeMillis() - start);
+				lazy.close();
+			}
+
+			XBRL eager = load(file, false);
+			XBRL lazy = new XBRL();
+			lazy.setLazyLinkbases(true);
+			lazy.load(new File(file));
+			int instanceFacts = lazy.getFactStore().size();
+
+			// the labels are loaded with the first value attributes
+			List<FactValue> values = eager.findValues();
+			List<FactValue> lazyValues = lazy.findValues();
+			Assert.assertEquals(values.size(), lazyValues.size());
+			for (int j = 0; j < values.size(); j++) {
+				Assert.assertEquals(values.get(j).getAttributes(), lazyValues.get(j).getAttributes());
+			}
+			Assert.assertEquals(eager.getPresentationAPI().getChildrenEx().size(),
+					lazy.getPresentationAPI().getChildrenEx().size());
+			Assert.assertEquals(eager.getFactStore().size(), lazy.getFactStore().size());
+
+			System.out.println(new File(file).getName() + ": load " + eagerTime + " ms -> lazy linkbases " + lazyTime
+					+ " ms; facts " + eager.getFactStore().size() + " -> " + instanceFacts);
+		}
+	}
+
+	@Test
+	public void testFactFilter() throws Exception {
+		List<String> fields = Arrays.asList("parameterName", "contextRef", "value");
+		for (String file : files) {
+			long start = usedMemory();
+			XBRL xbrl = load(file, false);
+			long loadMemory = usedMemory() - start;
+			List<String> parameters = xbrl.findValues(DataType.number).stream().map(v -> v.getParameterName())
+					.distinct().sorted().limit(40).collect(Collectors.toList());
+			List<String> values = xbrl.findValues().stream()
+					.filter(v -> v.getDataType() == DataType.number && v.getUnit().equals("USD")
+							&& parameters.contains(v.getParameterName()))
+					.map(v -> toString(v.getAttributes(), fields)).sorted().collect(Collectors.toList());
+			int facts = xbrl.getFactStore().size();
+			int contexts = xbrl.find(Type.context).size();
+			xbrl.close();
+
+			start = usedMemory();
+			XBRL filtered = new XBRL();
+			filtered.setFactFilter(new FactFilter().setParameterNames(parameters).setUnits(Arrays.asList("USD"))
+					.setDataTypes(DataType.number));
+			filtered.load(new File(file));
+			long filteredMemory = usedMemory() - start;
+			// the document information is always kept
+			List<String> filteredValues = filtered.findValues().stream()
+					.filter(v -> v.getDataType() == DataType.number && v.getUnit().equals("USD")
+							&& parameters.contains(v.getParameterName()))
+					.map(v -> toString(v.getAttributes(), fields)).sorted().collect(Collectors.toList());
+
+			System.out.println(new File(file).getName() + ": " + values.size() + " values; facts " + facts + " -> "
+					+ filtered.getFactStore().size() + "; contexts " + contexts + " -> "
+					+ filtered.find(Type.context).size() + "; memory " + loadMemory / 1024 + " KB -> filtered "
+					+ filteredMemory / 1024 + " KB");
+			Assert.assertEquals(values, filteredValues);
+			Assert.assertFalse(filtered.getFilingInfo().getForm().isEmpty());
+		}
+	}
+
+	private String toString(Map<String, String> attributes, List<String> fields) {
+		return fields.stream().map(f -> String.valueOf(attributes.get(f))).collect(Collectors.joining("|"));
+	}
+
+	private long loadTime(String file, boolean parallel) throws Exception {
+		XBRL xbrl = new XBRL();
+		xbrl.setParallelLoading(parallel);
+		long start = System.currentTimeMillis();
+		xbrl.load(new File(file));
+		long result = System.currentTimeMillis() - start;
+		xbrl.close();
+		return result;
+	}
+
+	@Test
+	public void testSkipHtml() throws Exception {
+		// iXBRL filings
+		for (String file : Arrays.asList(files.get(2), files.get(3))) {
+			List<String> values = new ArrayList();
+			for (boolean skipHtml : Arrays.asList(false, true)) {
+				long time = Long.MAX_VALUE;
+				for (int j = 0; j < 3; j++) {
+					long start = System.currentTimeMillis();
+					XBRL xbrl = new XBRL();
+					xbrl.setSkipHtml(skipHtml);
+					xbrl.load(new File(file));
+					time = Math.min(time, System.currentTimeMillis() - start);
+					xbrl.close();
+				}
+				long start = usedMemory();
+				XBRL xbrl = new XBRL();
+				xbrl.setSkipHtml(skipHtml);
+				xbrl.load(new File(file));
+				long memory = usedMemory() - start;
+				values.add(xbrl.findValues().stream().map(v -> v.getAttributes().toString())
+						.collect(Collectors.joining(System.lineSeparator())));
+				values.add(xbrl.getCombinedTextValues().stream().map(v -> v.getValue())
+						.collect(Collectors.joining(System.lineSeparator())));
+				System.out.println(new File(file).getName() + ": skipHtml=" + skipHtml + " " + time + " ms; "
+						+ memory / 1024 + " KB; " + xbrl.getFactStore().size() + " facts");
+			}
+			Assert.assertEquals(values.get(0), values.get(2));
+			Assert.assertEquals(values.get(1), values.get(3));
+		}
+	}
+
+	@Test
+	public void testLargeHtmlExhibits() throws Exception {
+		// iXBRL w/o xml prolog and a large exhibit which is not xml: both on a
+		// single line
+		StringBuffer ixbrl = new StringBuffer(System.lineSeparator() + "  <html xmlns=\"http://www.w3.org/1999/xhtml\" "
+				+ "xmlns:ix=\"http://www.xbrl.org/2013/inlineXBRL\" xmlns:dei=\"http://xbrl.sec.gov/dei/2014-01-31\"><body>");
+		StringBuffer exhibit = new StringBuffer("<html><body>");
+		while (exhibit.length() < 12000000) {
+			exhibit.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+		}
+		ixbrl.append("<ix:nonNumeric name=\"dei:DocumentType\" contextRef=\"c1\">10-K</ix:nonNumeric></body></html>");
+		exhibit.append("</body></html>");
+
+		File file = File.createTempFile("exhibits", ".zip");
+		file.deleteOnExit();
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file))) {
+			zos.putNextEntry(new ZipEntry("ex99.htm"));
+			zos.write(exhibit.toString().getBytes("UTF-8"));
+			zos.putNextEntry(new ZipEntry("filing.htm"));
+			zos.write(ixbrl.toString().getBytes("UTF-8"));
+		}
+
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		byte[] bytes = exhibit.toString().getBytes("UTF-8");
+		long allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		DocumentSniffer sniffer = new DocumentSniffer(new ByteArrayInputStream(bytes));
+		allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+		long start = System.currentTimeMillis();
+		XBRL xbrl = new XBRL();
+		xbrl.load(file);
+		long time = System.currentTimeMillis() - start;
+		System.out.println("sniffing of " + bytes.length / 1024 + " KB exhibit: " + allocated / 1024
+				+ " KB allocated; load: " + time + " ms");
+		Assert.assertEquals(DocumentSniffer.Kind.html, sniffer.getKind());
+		Assert.assertTrue(allocated < 100000);
+		Assert.assertEquals("10-K", xbrl.getFilingInfo().getForm());
+	}
+
+	@Test
+	public void testStringPool() throws Exception {
+		for (String file : files) {
+			long plain = pooledMemory(Arrays.asList(file), 0);
+			long pooled = pooledMemory(Arrays.asList(file), 200);
+			System.out.println(new File(file).getName() + ": " + plain / 1024 + " KB -> pooled strings " + pooled / 1024
+					+ " KB");
+		}
+		// multiple filings in one document
+		List<String> filings = Arrays.asList(files.get(3), files.get(0), files.get(1));
+		long plain = pooledMemory(filings, 0);
+		long pooled = pooledMemory(filings, 200);
+		System.out.println("all filings: " + plain / 1024 + " KB -> pooled strings " + pooled / 1024 + " KB");
+		Assert.assertTrue(pooled < plain);
+
+		XBRL xbrl = new XBRL();
+		xbrl.setSharedStringPool(true);
+		Assert.assertSame(StringPool.getShared(), xbrl.getStringPool());
+		xbrl.load(new File(files.get(0)));
+		FactValue value = xbrl.findValues().get(0);
+		Assert.assertSame(StringPool.getShared().intern(new String(value.getContextID())), value.getContextID());
+	}
+
+	@Test
+	public void testSnapshots() throws Exception {
+		File dir = Files.createTempDirectory("snapshots").toFile();
+		for (String file : files) {
+			File zip = new File(dir, new File(file).getName());
+			Files.copy(new File(file).toPath(), zip.toPath());
+			File snapshot = XBRLSnapshot.getSnapshotFile(zip);
+			for (boolean columnar : Arrays.asList(false, true)) {
+				long start = System.currentTimeMillis();
+				XBRL parsed = snapshotXBRL(zip, columnar, false);
+				long parseTime = System.currentTimeMillis() - start;
+
+				snapshotXBRL(zip, columnar, true).close();
+				Assert.assertTrue(snapshot.exists());
+				long loadTime = Long.MAX_VALUE;
+				XBRL restored = null;
+				for (int j = 0; j < 3; j++) {
+					start = System.currentTimeMillis();
+					restored = snapshotXBRL(zip, columnar, true);
+					loadTime = Math.min(loadTime, System.currentTimeMillis() - start);
+				}
+				System.out.println(zip.getName() + ": columnar=" + columnar + " parse " + parseTime
+						+ " ms -> snapshot " + loadTime + " ms (" + snapshot.length() / 1024 + " KB)");
+
+				Assert.assertEquals(parsed.getFactStore().size(), restored.getFactStore().size());
+				Assert.assertEquals(parsed.getFilingInfo().getForm(), restored.getFilingInfo().getForm());
+				Assert.assertEquals(parsed.getCompanyNumber(), restored.getCompanyNumber());
+				Assert.assertEquals(toString(parsed.findValues()), toString(restored.findValues()));
+				Assert.assertEquals(toString(parsed.getCombinedTextValues()),
+						toString(restored.getCombinedTextValues()));
+				for (String name : parsed.getParameterNames()) {
+					Assert.assertEquals(parsed.find(name, Type.value).size(), restored.find(name, Type.value).size());
+				}
+				Assert.assertEquals(parsed.find(Type.context).size(), restored.find(Type.context).size());
+				Assert.assertEquals(parsed.getPresentationAPI().getChildrenEx().size(),
+						restored.getPresentationAPI().getChildrenEx().size());
+				snapshot.delete();
+			}
+		}
+
+		// a changed zip file invalidates the snapshot
+		File zip = new File(dir, new File(files.get(0)).getName());
+		snapshotXBRL(zip, false, true);
+		File snapshot = XBRLSnapshot.getSnapshotFile(zip);
+		Assert.assertTrue(XBRLSnapshot.read(new XBRL(), zip, snapshot));
+		zip.setLastModified(zip.lastModified() - 10000);
+		Assert.assertFalse(XBRLSnapshot.read(new XBRL(), zip, snapshot));
+		snapshotXBRL(zip, false, true);
+		Assert.assertTrue(XBRLSnapshot.read(new XBRL(), zip, snapshot));
+		// different parser settings
+		XBRL converted = new XBRL();
+		converted.setConvertHtmlToText(true);
+		Assert.assertFalse(XBRLSnapshot.read(converted, zip, snapshot));
+
+		// concurrent writers of the same snapshot do not interfere
+		XBRL source = snapshotXBRL(zip, false, false);
+		snapshot.delete();
+		Assert.assertTrue(IntStream.range(0, 8).parallel()
+				.allMatch(j -> XBRLSnapshot.write(source, zip, snapshot)));
+		Assert.assertTrue(XBRLSnapshot.read(new XBRL(), zip, snapshot));
+		Assert.assertEquals(0, dir.listFiles((d, name) -> name.endsWith(".tmp")).length);
+	}
+
+	@Test
+	public void testFreeze() throws Exception {
+		String file = files.get(1);
+		XBRL reference = new XBRL();
+		reference.load(new File(file));
+		String expected = describe(reference);
+
+		XBRL xbrl = new XBRL();
+		xbrl.load(new File(file));
+		long start = System.currentTimeMillis();
+		xbrl.freeze();
+		long freezeTime = System.currentTimeMillis() - start;
+		int facts = xbrl.getFactStore().size();
+
+		// concurrent readers on the shared document
+		start = System.currentTimeMillis();
+		List<String> results = Collections.synchronizedList(new ArrayList());
+		Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8).parallelStream().forEach(n -> results.add(describe(xbrl)));
+		long readTime = System.currentTimeMillis() - start;
+		System.out.println(new File(file).getName() + ": freeze " + freezeTime + " ms; 8 concurrent readers "
+				+ readTime + " ms");
+
+		Assert.assertTrue(xbrl.isFrozen());
+		Assert.assertEquals(facts, xbrl.getFactStore().size());
+		// the exploded facts are determined only once
+		Fact context = xbrl.find(Type.context).get(0);
+		Assert.assertSame(context.getFacts(), context.getFacts());
+		for (String result : results) {
+			Assert.assertEquals(expected, result);
+		}
+		try {
+			xbrl.load(new File(files.get(0)));
+			Assert.fail("frozen documents can not be loaded");
+		} catch (IllegalStateException ex) {
+		}
+
+		// a serialized document (e.g. from the spooled cache) is still frozen
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(xbrl);
+		}
+		XBRL copy;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			copy = (XBRL) in.readObject();
+		}
+		Assert.assertTrue(copy.isFrozen());
+		Assert.assertEquals(xbrl.getCombinedTextValues().size(), copy.getCombinedTextValues().size());
+		Assert.assertEquals(expected, describe(copy));
+	}
+
+	@Test
+	public void testMultiFilingLoad() throws Exception {
+		List<File> filings = Arrays.asList(new File(files.get(3)), new File(files.get(0)), new File(files.get(1)),
+				new File(files.get(2)));
+		long start = System.currentTimeMillis();
+		XBRL sequential = new XBRL();
+		for (File file : filings) {
+			sequential.tryLoad(file, null);
+		}
+		long sequentialTime = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		XBRL parallel = new XBRL();
+		parallel.setFilingParallelism(4);
+		parallel.load(filings);
+		long parallelTime = System.currentTimeMillis() - start;
+		System.out.println(filings.size() + " filings: sequential " + sequentialTime + " ms -> parallel "
+				+ parallelTime + " ms");
+
+		Assert.assertEquals(sequential.getFactStore().size(), parallel.getFactStore().size());
+		Assert.assertEquals(filings.size(), parallel.getFilings().size());
+		// each filing provides the same values as if it was loaded on its own
+		int values = 0;
+		for (int j = 0; j < filings.size(); j++) {
+			XBRL single = new XBRL();
+			single.load(filings.get(j));
+			List<FactValue> filingValues = parallel.findValues(parallel.getFilings().get(j));
+			Assert.assertEquals(toKeys(single.findValues()), toKeys(filingValues));
+			values += filingValues.size();
+		}
+		Assert.assertEquals(parallel.findValues().size(), values);
+
+		// with a FactFilter each filing keeps the contexts which are used by its
+		// own values
+		XBRL filtered = new XBRL();
+		filtered.setFilingParallelism(4);
+		filtered.setFactFilter(new FactFilter().setDataTypes(DataType.number));
+		filtered.load(filings);
+		int contexts = 0;
+		for (File file : filings) {
+			XBRL single = new XBRL();
+			single.setFactFilter(new FactFilter().setDataTypes(DataType.number));
+			single.load(file);
+			contexts += single.find(Type.context).size();
+		}
+		Assert.assertEquals(contexts, filtered.find(Type.context).size());
+	}
+
+	@Test
+	public void testContinuations() throws Exception {
+		// iXBRL filings
+		for (String file : Arrays.asList(files.get(2), files.get(3))) {
+			XBRL xbrl = new XBRL();
+			xbrl.load(new File(file));
+			long start = System.currentTimeMillis();
+			List<FactValue> texts = textValues(xbrl);
+			int continued = 0;
+			for (FactValue value : texts) {
+				if (!Utils.isEmpty(value.getAttribute("continuedAt"))) {
+					Assert.assertFalse(Utils.isEmpty(value.getValue()));
+					continued++;
+				}
+			}
+			System.out.println(new File(file).getName() + ": " + texts.size() + " text values with " + continued
+					+ " continuations in " + (System.currentTimeMillis() - start) + " ms");
+
+			// the assembled text is limited by the max field size
+			XBRL limited = new XBRL();
+			limited.setMaxFieldSize(100);
+			limited.load(new File(file));
+			for (FactValue value : textValues(limited)) {
+				Assert.assertTrue(value.getValue().length() <= 100);
+			}
+
+			// the continuations which are kept back with the values by a FactFilter
+			// are resolved as well
+			XBRL filtered = new XBRL();
+			filtered.setFactFilter(new FactFilter());
+			filtered.load(new File(file));
+			Assert.assertEquals(toKeys(texts), toKeys(textValues(filtered)));
+		}
+	}
+
+	private List<FactValue> textValues(XBRL xbrl) {
+		return xbrl.findValues().stream().filter(v -> v.getDataType() == DataType.string)
+				.collect(Collectors.toList());
+	}
+
+	private String toKeys(List<FactValue> values) {
+		return values.stream().map(v -> v.getAttribute(Fact.Attribute.file) + " " + v.getParameterName() + " "
+				+ v.getContextID() + " " + v.getValue()).collect(Collectors.joining(System.lineSeparator()));
+	}
+
+	private String describe(XBRL xbrl) {
+		StringBuffer sb = new StringBuffer();
+		sb.append(toString(xbrl.findValues()));
+		sb.append(toString(xbrl.getCombinedTextValues()));
+		for (Presentation p : xbrl.getPresentationAPI().getChildrenEx()) {
+			sb.append(p.getLabel());
+			sb.append(p.getFacts().size());
+		}
+		for (FactValue value : xbrl.findValues()) {
+			sb.append(value.getUnit());
+			sb.append(value.getContext() == null ? "" : value.getContext().getSegmentDescription());
+		}
+		return sb.toString();
+	}
+
+	private XBRL snapshotXBRL(File zip, boolean columnar, boolean snapshots) {
+		XBRL xbrl = new XBRL();
+		xbrl.setColumnarStorage(columnar);
+		xbrl.setSnapshots(snapshots);
+		xbrl.load(zip);
+		return xbrl;
+	}
+
+	private String toString(List<FactValue> values) {
+		return values.stream().map(v -> v.getAttributes().toString() + v.getValue())
+				.collect(Collectors.joining(System.lineSeparator()));
+	}
+
+	private long pooledMemory(List<String> files, int maxLength) throws Exception {
+		long start = usedMemory();
+		XBRL xbrl = new XBRL();
+		StringPool pool = new StringPool();
+		pool.setMaxLength(maxLength);
+		xbrl.setStringPool(pool);
+		for (String file : files) {
+			xbrl.load(new File(file));
+		}
+		// setup the calculated value attributes
+		for (FactValue value : xbrl.findValues()) {
+			value.getAttributes();
+		}
+		long result = usedMemory() - start;
+		xbrl.close();
+		return result;
+	}
+
+	private long bytesPerFact(String file, boolean columnar) throws Exception {
+		long start = usedMemory();
+		XBRL xbrl = load(file, columnar);
+		// setup the calculated value attributes
+		for (FactValue value : xbrl.findValues()) {
+			value.getAttributes();
+		}
+		long result = (usedMemory() - start) / xbrl.getFactStore().size();
+		xbrl.close();
+		return result;
+	}
+
+	private XBRL load(String file, boolean columnar) throws Exception {
+		XBRL xbrl = new XBRL();
+		xbrl.setColumnarStorage(columnar);
+		xbrl.load(new File(file));
+		return xbrl;
+	}
+
+	private long usedMemory() throws InterruptedException {
+		Runtime rt = Runtime.getRuntime();
+		for (int j = 0; j < 3; j++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+}